@@ -0,0 +1,407 @@
+import java.util.Locale;
+
+/**
+ * Small command line micro benchmarks for the engine internals.
+ *
+ * <pre>
+ * java -cp out Bench attacks
+ * java -cp out Bench search [depth]
+ * java -cp out Bench smp [depth]
+ * java -cp out Bench pruning [depth]
+ * java -cp out Bench multipv [depth]
+ * java -cp out Bench eval
+ * java --add-modules jdk.incubator.vector -cp out Bench nnue [hidden]
+ * java -cp out Bench book [book.bin]
+ * </pre>
+ */
+public class Bench {
+    static final String[] POSITIONS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+    };
+
+    // verhindert, dass der JIT die gemessenen Aufrufe wegoptimiert
+    static long sink;
+
+    public static void main(String[] args){
+        String what = args.length > 0 ? args[0] : "attacks";
+        // die AI erzeugt die Bitbasen im Hintergrund; vorab fertig, damit Knotenzahlen reproduzierbar bleiben
+        if(java.util.Set.of("search", "smp", "pruning", "multipv").contains(what)) Bitbases.init();
+        switch(what){
+            case "attacks" -> benchAttacks();
+            case "search" -> benchSearch(args.length > 1 ? Integer.parseInt(args[1]) : 4);
+            case "smp" -> benchSmp(args.length > 1 ? Integer.parseInt(args[1]) : 7);
+            case "pruning" -> benchPruning(args.length > 1 ? Integer.parseInt(args[1]) : 6);
+            case "multipv" -> benchMultiPv(args.length > 1 ? Integer.parseInt(args[1]) : 5);
+            case "eval" -> benchEval();
+            case "nnue" -> benchNnue(args.length > 1 ? Integer.parseInt(args[1]) : 256);
+            case "book" -> benchBook(args.length > 1 ? args[1] : null);
+            default -> System.err.println("Unbekannter Benchmark: " + what);
+        }
+        if(sink == 42) System.out.println();
+    }
+
+    static void benchAttacks(){
+        ChessGUI.Board[] boards = new ChessGUI.Board[POSITIONS.length];
+        for(int i=0;i<boards.length;i++) boards[i] = ChessGUI.Board.fromFEN(POSITIONS[i]);
+        int calls = boards.length * 64 * 2;
+
+        for(int round=0; round<2; round++){
+            boolean report = round == 1; // erste Runde = Warmup
+            double legacy = time(() -> {
+                long n = 0;
+                for(ChessGUI.Board b: boards) for(int sq=0;sq<64;sq++){
+                    if(legacyIsSquareAttacked(b, sq, ChessGUI.Side.WHITE)) n++;
+                    if(legacyIsSquareAttacked(b, sq, ChessGUI.Side.BLACK)) n++;
+                }
+                sink += n;
+            }, calls);
+            double tables = time(() -> {
+                long n = 0;
+                for(ChessGUI.Board b: boards) for(int sq=0;sq<64;sq++){
+                    if(b.isSquareAttacked(sq, ChessGUI.Side.WHITE)) n++;
+                    if(b.isSquareAttacked(sq, ChessGUI.Side.BLACK)) n++;
+                }
+                sink += n;
+            }, calls);
+            double rays = time(() -> {
+                long n = 0;
+                for(ChessGUI.Board b: boards) for(int sq=0;sq<64;sq++){
+                    n ^= Bitboards.slowRookAttacks(sq, b.occAll) ^ Bitboards.slowBishopAttacks(sq, b.occAll);
+                }
+                sink += n;
+            }, boards.length * 64);
+            double magics = time(() -> {
+                long n = 0;
+                for(ChessGUI.Board b: boards) for(int sq=0;sq<64;sq++){
+                    n ^= Bitboards.rookAttacks(sq, b.occAll) ^ Bitboards.bishopAttacks(sq, b.occAll);
+                }
+                sink += n;
+            }, boards.length * 64);
+            if(report){
+                System.out.printf(Locale.ROOT, "isSquareAttacked  64-Felder-Scan: %8.1f ns/Aufruf%n", legacy);
+                System.out.printf(Locale.ROOT, "isSquareAttacked  Tabellen/Magic: %8.1f ns/Aufruf  (x%.1f)%n", tables, legacy / tables);
+                System.out.printf(Locale.ROOT, "Läufer+Turm       Strahlen:       %8.1f ns/Feld%n", rays);
+                System.out.printf(Locale.ROOT, "Läufer+Turm       Magic:          %8.1f ns/Feld     (x%.1f)%n", magics, rays / magics);
+            }
+        }
+    }
+
+    // Kosten einer statischen Bewertung: frühere Mobilität über legalMoves() vs. Angriffstabellen
+    static void benchEval(){
+        ChessGUI.Board[] boards = new ChessGUI.Board[POSITIONS.length];
+        for(int i=0;i<boards.length;i++) boards[i] = ChessGUI.Board.fromFEN(POSITIONS[i]);
+        for(int round=0; round<2; round++){
+            boolean report = round == 1; // erste Runde = Warmup
+            double legacy = time(() -> {
+                long n = 0;
+                for(ChessGUI.Board b: boards) n += legacyEvaluate(b);
+                sink += n;
+            }, boards.length);
+            double current = time(() -> {
+                long n = 0;
+                for(ChessGUI.Board b: boards) n += ChessGUI.Eval.evaluate(b);
+                sink += n;
+            }, boards.length);
+            PawnTable pawns = new PawnTable();
+            double cached = time(() -> {
+                long n = 0;
+                for(ChessGUI.Board b: boards) n += ChessGUI.Eval.evaluate(b, pawns);
+                sink += n;
+            }, boards.length);
+            if(report){
+                System.out.printf(Locale.ROOT, "Eval  Mobilität über legalMoves(): %8.1f ns/Bewertung%n", legacy);
+                System.out.printf(Locale.ROOT, "Eval  Angriffe, ohne Bauern-Hash:  %8.1f ns/Bewertung  (x%.1f)%n", current, legacy / current);
+                System.out.printf(Locale.ROOT, "Eval  Angriffe, mit Bauern-Hash:   %8.1f ns/Bewertung  (x%.1f)%n", cached, legacy / cached);
+            }
+        }
+    }
+
+    // Bewertungen pro Sekunde je Blattknoten (make, Bewertung, unmake): Eval vs. NNUE skalar/Vector API, Zufallsgewichte
+    static void benchNnue(int hidden){
+        Nnue simd = Nnue.random(1, hidden);
+        Nnue scalar = simd.withKernel(new Nnue.ScalarKernel());
+        System.out.println("NNUE 768 -> " + hidden + "x2 -> 1, Kernel: " + simd.kernel.name());
+        ChessGUI.Board[] boards = new ChessGUI.Board[POSITIONS.length];
+        for(int i=0;i<boards.length;i++) boards[i] = ChessGUI.Board.fromFEN(POSITIONS[i]);
+        for(ChessGUI.Board b: boards){
+            ChessGUI.Board x = b.copy(), y = b.copy();
+            x.attachNnue(scalar); y.attachNnue(simd);
+            if(x.nnue.evaluate(x.sideToMove) != y.nnue.evaluate(y.sideToMove))
+                throw new IllegalStateException("Skalar und Vector API weichen ab: " + b.toFEN());
+        }
+        int leaves = 0;
+        for(ChessGUI.Board b: boards) leaves += b.legalMoves().size();
+        PawnTable pawns = new PawnTable();
+        for(int round=0; round<2; round++){
+            boolean report = round == 1; // erste Runde = Warmup
+            double classic = time(() -> {
+                long n = 0;
+                for(ChessGUI.Board b: boards) for(ChessGUI.Move m: b.legalMoves()){
+                    ChessGUI.UndoInfo u = b.make(m);
+                    n += ChessGUI.Eval.evaluate(b, pawns);
+                    b.unmake(u);
+                }
+                sink += n;
+            }, leaves);
+            double[] nnue = new double[2], refresh = new double[2];
+            Nnue[] nets = {simd, scalar}; // Vector API zuerst, solange die Aufrufstellen nur diesen Kernel gesehen haben
+            for(int k=0;k<2;k++){
+                Nnue net = nets[k];
+                for(ChessGUI.Board b: boards) b.attachNnue(net);
+                nnue[k] = time(() -> {
+                    long n = 0;
+                    for(ChessGUI.Board b: boards) for(ChessGUI.Move m: b.legalMoves()){
+                        ChessGUI.UndoInfo u = b.make(m);
+                        n += b.nnue.evaluate(b.sideToMove);
+                        b.unmake(u);
+                    }
+                    sink += n;
+                }, leaves);
+                refresh[k] = time(() -> {
+                    long n = 0;
+                    for(ChessGUI.Board b: boards){ b.nnue.refresh(b); n += b.nnue.evaluate(b.sideToMove); }
+                    sink += n;
+                }, boards.length);
+                for(ChessGUI.Board b: boards) b.detachNnue();
+            }
+            if(report){
+                System.out.printf(Locale.ROOT, "%-34s %8.1f ns/Blatt  %,12.0f Bewertungen/s%n", "Eval (klassisch)", classic, 1e9 / classic);
+                for(int k=0;k<2;k++){
+                    System.out.printf(Locale.ROOT, "%-34s %8.1f ns/Blatt  %,12.0f Bewertungen/s  (Neuberechnung %.0f ns)%n",
+                            "NNUE " + nets[k].kernel.name() + ", inkrementell", nnue[k], 1e9 / nnue[k], refresh[k]);
+                }
+            }
+        }
+    }
+
+    // Die frühere Bewertung (Material/PST + legale Züge der Seite am Zug / 3), nur als Vergleichsbasis
+    static int legacyEvaluate(ChessGUI.Board b){
+        int mob = b.legalMoves().size();
+        return ChessGUI.Eval.mg(b.psqt) + (b.sideToMove==ChessGUI.Side.WHITE?1:-1) * (mob/3);
+    }
+
+    // feste Tiefe auf allen Bench-Stellungen, mit und ohne Transpositionstabelle
+    static void benchSearch(int depth){
+        for(int ttMb: new int[]{0, 16}){
+            ChessGUI.AI ai = new ChessGUI.AI(depth, ttMb);
+            long nodes = 0, pawnHits = 0, pawnProbes = 0, t0 = System.nanoTime();
+            for(String fen: POSITIONS){
+                ChessGUI.Move m = ai.findBestMove(ChessGUI.Board.fromFEN(fen));
+                nodes += ai.nodes;
+                pawnHits += ai.pawns.hits;
+                pawnProbes += ai.pawns.hits + ai.pawns.misses;
+                sink += m == null ? 0 : m.to;
+            }
+            double sec = (System.nanoTime() - t0) / 1e9;
+            System.out.printf(Locale.ROOT, "Tiefe %d, TT %3d MB: %,12d Knoten in %6.2f s (%,.0f Knoten/s), Bauern-Hash %.1f %% Treffer%n",
+                    depth, ttMb, nodes, sec, nodes / sec, 100.0 * pawnHits / Math.max(1, pawnProbes));
+        }
+    }
+
+    // selektive Suche: alles an, alles aus und jeweils eine Technik abgeschaltet
+    static void benchPruning(int depth){
+        String[] names = {"alle an", "alle aus", "ohne Nullzug", "ohne LMR", "ohne Reverse Futility", "ohne Futility", "ohne Schachverl."};
+        for(int v=-1; v<names.length; v++){ // v=-1: Warmup
+            ChessGUI.AI ai = new ChessGUI.AI(depth, 16);
+            ChessGUI.AI.Options o = ai.options;
+            boolean all = v != 1;
+            o.nullMove = all && v != 2; o.lmr = all && v != 3; o.reverseFutility = all && v != 4;
+            o.futility = all && v != 5; o.checkExtensions = all && v != 6;
+            long nodes = 0, t0 = System.nanoTime();
+            StringBuilder moves = new StringBuilder();
+            for(String fen: POSITIONS){
+                ChessGUI.Move m = ai.findBestMove(ChessGUI.Board.fromFEN(fen));
+                nodes += ai.nodes;
+                moves.append(' ').append(m);
+            }
+            double sec = (System.nanoTime() - t0) / 1e9;
+            if(v < 0) continue;
+            System.out.printf(Locale.ROOT, "Tiefe %d, %-22s %,12d Knoten in %6.2f s  Züge:%s%n", depth, names[v]+":", nodes, sec, moves);
+        }
+    }
+
+    // Top-3-Analyse: alle Wurzelzüge einzeln voll durchsuchen (analyzeRoot ohne K) vs. MultiPV
+    static void benchMultiPv(int depth){
+        for(int round=0; round<2; round++){ // erste Runde = Warmup
+            long naiveNodes = 0, multiNodes = 0, naiveNs = 0, multiNs = 0;
+            for(String fen: POSITIONS){
+                ChessGUI.Board b = ChessGUI.Board.fromFEN(fen);
+                ChessGUI.AI ai = new ChessGUI.AI(depth, 16);
+                long t0 = System.nanoTime();
+                sink += ai.analyzeRoot(b, depth).get(0).score;
+                naiveNs += System.nanoTime() - t0;
+                naiveNodes += ai.nodes;
+
+                ai = new ChessGUI.AI(depth, 16);
+                t0 = System.nanoTime();
+                sink += ai.analyzeRoot(b, depth, 3).get(0).score;
+                multiNs += System.nanoTime() - t0;
+                multiNodes += ai.nodes;
+            }
+            if(round == 0) continue;
+            System.out.printf(Locale.ROOT, "Tiefe %d, alle Züge einzeln: %,12d Knoten in %6.2f s%n", depth, naiveNodes, naiveNs / 1e9);
+            System.out.printf(Locale.ROOT, "Tiefe %d, MultiPV 3:        %,12d Knoten in %6.2f s%n", depth, multiNodes, multiNs / 1e9);
+        }
+    }
+
+    // Lazy SMP: Zeit bis zur festen Tiefe über alle Bench-Stellungen, je Threadanzahl mit frischer TT
+    static void benchSmp(int depth){
+        System.out.println("Prozessoren: " + Runtime.getRuntime().availableProcessors());
+        double base = 0;
+        int[] counts = {1, 1, 2, 4, 8, 16}; // erster Lauf = Warmup
+        for(int r=0; r<counts.length; r++){
+            int threads = counts[r];
+            ChessGUI.AI ai = new ChessGUI.AI(depth, 64);
+            ai.setThreads(threads);
+            long nodes = 0, t0 = System.nanoTime();
+            for(String fen: POSITIONS){
+                ChessGUI.Move m = ai.findBestMove(ChessGUI.Board.fromFEN(fen));
+                nodes += ai.nodes;
+                sink += m == null ? 0 : m.to;
+            }
+            double sec = (System.nanoTime() - t0) / 1e9;
+            if(r == 0) continue;
+            if(r == 1) base = sec;
+            System.out.printf(Locale.ROOT, "Tiefe %d, %2d Threads: %6.2f s bis Tiefe (x%.2f), %,12d Knoten (%,.0f Knoten/s)%n",
+                    depth, threads, sec, base / sec, nodes, nodes / sec);
+        }
+    }
+
+    /**
+     * Polyglot lookup latency: raw binary search for keys in and not in the book, and a full
+     * book move (hash, search, legality check) for the start position and its replies. Without a
+     * file a synthetic book with 4M entries (64 MB) is generated; an unreadable
+     * {@code chess.polyglotRandom} override falls back to the bundled table.
+     */
+    static void benchBook(String file){
+        PolyglotBook.Keys keys;
+        try {
+            keys = PolyglotBook.Keys.loadDefault();
+        } catch (java.io.IOException e){
+            keys = PolyglotBook.Keys.standard();
+            System.out.println("Random64-Tabelle nicht lesbar, nehme die eingebaute: " + e.getMessage());
+        }
+        // Buchstellungen: Start und alle Stellungen nach dem ersten Zug
+        java.util.List<ChessGUI.Board> positions = new java.util.ArrayList<>();
+        ChessGUI.Board start = ChessGUI.Board.initial();
+        positions.add(start);
+        for(ChessGUI.Move m: start.legalMoves()) positions.add(start.makeMove(m));
+        PolyglotBook book;
+        try {
+            java.nio.file.Path path;
+            if(file != null) path = java.nio.file.Paths.get(file);
+            else {
+                path = java.nio.file.Files.createTempFile("bench", ".bin");
+                path.toFile().deleteOnExit();
+                writeSyntheticBook(path, keys, positions, 4 << 20);
+            }
+            book = PolyglotBook.load(path, keys);
+        } catch (java.io.IOException e){
+            System.err.println("Buch nicht lesbar: " + e.getMessage());
+            return;
+        }
+        System.out.printf(Locale.ROOT, "Buch: %,d Einträge (%s)%n", book.size(), file != null ? file : "synthetisch");
+        PolyglotBook fb = book;
+        int lookups = 1 << 16;
+        long[] hit = new long[lookups], miss = new long[lookups];
+        java.util.SplittableRandom r = new java.util.SplittableRandom(7);
+        for(int i=0;i<lookups;i++){ hit[i] = book.keyAt(r.nextInt(book.size())); miss[i] = r.nextLong(); }
+        ChessGUI.Board[] boards = positions.toArray(new ChessGUI.Board[0]);
+        for(int round=0; round<2; round++){
+            boolean report = round == 1; // erste Runde = Warmup
+            double tHit = time(() -> { long n = 0; for(long k: hit) n += fb.count(k); sink += n; }, lookups);
+            double tMiss = time(() -> { long n = 0; for(long k: miss) n += fb.count(k); sink += n; }, lookups);
+            double tMove = time(() -> {
+                long n = 0;
+                for(ChessGUI.Board b: boards){ ChessGUI.Move m = fb.bestMove(b); if(m != null) n += m.to; }
+                sink += n;
+            }, boards.length);
+            if(report){
+                System.out.printf(Locale.ROOT, "Schlüssel im Buch:       %8.1f ns/Suche%n", tHit);
+                System.out.printf(Locale.ROOT, "Schlüssel nicht im Buch: %8.1f ns/Suche%n", tMiss);
+                System.out.printf(Locale.ROOT, "Buchzug für Stellung:    %8.1f ns (Hash, Suche, Legalitätsprüfung; %d Stellungen)%n", tMove, boards.length);
+            }
+        }
+    }
+
+    // sortierte Zufallsschlüssel plus echte Einträge für die Buchstellungen
+    private static void writeSyntheticBook(java.nio.file.Path path, PolyglotBook.Keys keys, java.util.List<ChessGUI.Board> positions, int size) throws java.io.IOException {
+        java.util.SplittableRandom r = new java.util.SplittableRandom(1);
+        long[] entries = new long[size * 2]; // je Eintrag: Schlüssel, (Zug << 32 | Gewicht)
+        int n = 0;
+        for(ChessGUI.Board b: positions){
+            long key = keys.hash(b);
+            for(ChessGUI.Move m: b.legalMoves()){
+                if(n == size) break;
+                int pm = m.to | (m.from << 6); // Buchstellungen haben keine Rochaden/Umwandlungen
+                entries[2*n] = key; entries[2*n+1] = ((long)pm << 32) | r.nextInt(1, 100);
+                n++;
+            }
+        }
+        for(; n<size; n++){ entries[2*n] = r.nextLong(); entries[2*n+1] = r.nextInt(1 << 16); }
+        // vorzeichenlos nach Schlüssel sortieren
+        Integer[] order = new Integer[size];
+        for(int i=0;i<size;i++) order[i] = i;
+        java.util.Arrays.sort(order, (a, b) -> Long.compareUnsigned(entries[2*a], entries[2*b]));
+        java.nio.ByteBuffer buf = java.nio.ByteBuffer.allocate(size * 16);
+        for(int i: order) buf.putLong(entries[2*i]).putShort((short)(entries[2*i+1] >>> 32)).putShort((short)entries[2*i+1]).putInt(0);
+        java.nio.file.Files.write(path, buf.array());
+    }
+
+    /** Runs {@code body} repeatedly for about half a second and returns ns per operation. */
+    static double time(Runnable body, int opsPerRun){
+        long runs = 0, start = System.nanoTime(), elapsed;
+        do {
+            body.run();
+            runs++;
+            elapsed = System.nanoTime() - start;
+        } while(elapsed < 500_000_000L);
+        return elapsed / (double)(runs * opsPerRun);
+    }
+
+    // Die frühere Implementierung aus Board (Scan über alle 64 Felder), nur als Vergleichsbasis
+    static boolean legacyIsSquareAttacked(ChessGUI.Board b, int target, ChessGUI.Side by){
+        int tx=ChessGUI.Board.file(target), ty=ChessGUI.Board.rank(target);
+        for(int i=0;i<64;i++){
+            ChessGUI.Piece p=b.sq[i]; if(p==null||p.side!=by) continue;
+            int x=ChessGUI.Board.file(i), y=ChessGUI.Board.rank(i);
+            switch(p.type){
+                case PAWN -> {
+                    int dir=(by==ChessGUI.Side.WHITE)?1:-1;
+                    if(x+1==tx && y+dir==ty) return true;
+                    if(x-1==tx && y+dir==ty) return true;
+                }
+                case KNIGHT -> {
+                    int[][] N={{1,2},{2,1},{2,-1},{1,-2},{-1,-2},{-2,-1},{-2,1},{-1,2}};
+                    for(int[] d:N) if(x+d[0]==tx && y+d[1]==ty) return true;
+                }
+                case KING -> {
+                    for(int dx=-1;dx<=1;dx++) for(int dy=-1;dy<=1;dy++){
+                        if(dx==0&&dy==0) continue;
+                        if(x+dx==tx && y+dy==ty) return true;
+                    }
+                }
+                case BISHOP,ROOK,QUEEN -> {
+                    int[][] dirs = switch(p.type){
+                        case BISHOP -> new int[][]{{1,1},{1,-1},{-1,1},{-1,-1}};
+                        case ROOK   -> new int[][]{{1,0},{-1,0},{0,1},{0,-1}};
+                        default     -> new int[][]{{1,1},{1,-1},{-1,1},{-1,-1},{1,0},{-1,0},{0,1},{0,-1}};
+                    };
+                    for(int[] d: dirs){
+                        int fx=x+d[0], fy=y+d[1];
+                        while(ChessGUI.Board.in(fx,fy)){
+                            int j=ChessGUI.Board.idx(fx,fy);
+                            if(j==target) return true;
+                            if(b.sq[j]!=null) break;
+                            fx+=d[0]; fy+=d[1];
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
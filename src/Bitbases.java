@@ -0,0 +1,289 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Win/draw bitbases for KPK, KRK and KQK, built by retrograde analysis on
+ * {@link #init} or in the background after {@link #initAsync} (under a second,
+ * spread over all cores). Until they are ready a probe of those endings returns
+ * {@link #UNKNOWN}, so a search never waits for them. One bit per position:
+ * set = the side with the extra piece wins. A probe normalises the board so
+ * that side is white (and, for KPK, the pawn is on files a-d), computes the
+ * index and tests one bit.
+ *
+ * <p>With {@code -Dchess.bitbaseCache=<file>} the tables are read from that file
+ * if it exists and written to it after generation otherwise.
+ *
+ * <pre>
+ * java -cp out Bitbases   (generation time, table sizes and hand-checked positions; exit code 1 on mismatch)
+ * </pre>
+ */
+final class Bitbases {
+    private Bitbases() {}
+
+    /** Probe results from the side to move's point of view. */
+    static final int UNKNOWN = 0, DRAW = 1, WIN = 2, LOSS = 3;
+
+    // Tabellen je Zusatzfigur; Index = stm | wk<<1 | bk<<7 | Figur<<13 (stm 0 = Weiß/stärkere Seite am Zug)
+    private static final int KPK = 0, KRK = 1, KQK = 2;
+    private static final int[] SIZE = {2*64*64*24, 2*64*64*64, 2*64*64*64};
+    private static final int MAGIC = 0x4242504A; // "JPBB"
+
+    // Generierung: Zustand je Stellung
+    private static final byte G_UNKNOWN = 0, G_INVALID = 1, G_DRAW = 2, G_WIN = 3;
+
+    private static volatile long[][] tables; // null, bis erzeugt oder geladen
+    private static final Object LOCK = new Object();
+    private static final java.util.concurrent.atomic.AtomicBoolean STARTED = new java.util.concurrent.atomic.AtomicBoolean();
+
+    /**
+     * Result for boards with two kings and at most one other piece: KK, KNK and KBK are draws,
+     * KPK/KRK/KQK come from the tables. Anything else, and those endings while the tables are
+     * not ready yet, is {@link #UNKNOWN}.
+     */
+    static int probe(ChessGUI.Board b){
+        long all = b.occAll;
+        int n = Long.bitCount(all);
+        if(n == 2) return DRAW;
+        if(n != 3) return UNKNOWN;
+        long kings = b.bb[Bitboards.KING] | b.bb[6 + Bitboards.KING];
+        int x = Long.numberOfTrailingZeros(all & ~kings);
+        ChessGUI.Piece p = b.sq[x];
+        int table = switch(p.type){
+            case PAWN -> KPK;
+            case ROOK -> KRK;
+            case QUEEN -> KQK;
+            default -> -1;
+        };
+        if(table < 0) return DRAW; // König und Leichtfigur gegen König
+        long[][] t = tables;
+        if(t == null) return UNKNOWN;
+        boolean strongWhite = p.side == ChessGUI.Side.WHITE;
+        int wk = Long.numberOfTrailingZeros(b.bb[strongWhite ? Bitboards.KING : 6 + Bitboards.KING]);
+        int bk = Long.numberOfTrailingZeros(b.bb[strongWhite ? 6 + Bitboards.KING : Bitboards.KING]);
+        // stärkere Seite auf Weiß spiegeln (vertikal), Bauern zusätzlich auf die Linien a-d
+        int flip = strongWhite ? 0 : 56;
+        wk ^= flip; bk ^= flip; x ^= flip;
+        int pieceIdx = x;
+        if(table == KPK){
+            if((x & 7) > 3){ wk ^= 7; bk ^= 7; x ^= 7; }
+            pieceIdx = pawnIndex(x);
+        }
+        int stm = b.sideToMove == p.side ? 0 : 1;
+        int i = index(stm, wk, bk, pieceIdx);
+        if((t[table][i >>> 6] & (1L << i)) == 0) return DRAW;
+        return stm == 0 ? WIN : LOSS;
+    }
+
+    /** Generates (or loads) the tables now, waiting for a build already running in the background. */
+    static void init(){
+        if(tables != null) return;
+        synchronized(LOCK){
+            if(tables == null) tables = loadOrBuild();
+        }
+    }
+
+    /** Starts {@link #init} once in a daemon thread and returns at once. */
+    static void initAsync(){
+        if(tables != null || !STARTED.compareAndSet(false, true)) return;
+        Thread t = new Thread(Bitbases::init, "bitbases");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    static boolean ready(){ return tables != null; }
+
+    private static int index(int stm, int wk, int bk, int piece){ return stm | (wk << 1) | (bk << 7) | (piece << 13); }
+
+    // Bauer auf Linie a-d, Reihe 2-7 -> 0..23
+    private static int pawnIndex(int sq){ return ((sq >>> 3) - 1) * 4 + (sq & 7); }
+    private static int pawnSquare(int idx){ return ((idx / 4) + 1) * 8 + (idx & 3); }
+
+    private static long[][] loadOrBuild(){
+        String cache = System.getProperty("chess.bitbaseCache");
+        if(cache != null && Files.exists(Paths.get(cache))){
+            try {
+                return read(Paths.get(cache));
+            } catch (IOException e){
+                System.err.println("Bitbasen-Cache unbrauchbar, wird neu erzeugt: " + e.getMessage());
+            }
+        }
+        long[][] t = {build(KPK), build(KRK), build(KQK)};
+        if(cache != null){
+            try { write(Paths.get(cache), t); }
+            catch (IOException e){ System.err.println("Bitbasen-Cache nicht geschrieben: " + e.getMessage()); }
+        }
+        return t;
+    }
+
+    private static long[][] read(Path file) throws IOException {
+        try(DataInputStream in = new DataInputStream(new java.io.BufferedInputStream(Files.newInputStream(file)))){
+            if(in.readInt() != MAGIC) throw new IOException("keine Bitbasen-Datei: " + file);
+            long[][] t = new long[3][];
+            for(int k=0;k<3;k++){
+                int n = in.readInt();
+                if(n != SIZE[k] / 64) throw new IOException("falsche Tabellengröße in " + file);
+                t[k] = new long[n];
+                for(int i=0;i<n;i++) t[k][i] = in.readLong();
+            }
+            return t;
+        }
+    }
+
+    private static void write(Path file, long[][] t) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new java.io.BufferedOutputStream(Files.newOutputStream(file)))){
+            out.writeInt(MAGIC);
+            for(long[] table: t){
+                out.writeInt(table.length);
+                for(long w: table) out.writeLong(w);
+            }
+        }
+    }
+
+    /**
+     * Retrograde fixpoint: start from mates, stalemates and (KPK) safe promotions, then mark a
+     * position won if white to move has a move into a won position, or black to move only has
+     * such moves. Every pass runs in parallel over the index range; states only ever change from
+     * unknown, so reading a neighbour mid-pass is harmless. What stays unknown is a draw.
+     */
+    private static long[] build(int table){
+        byte[] r = new byte[SIZE[table]];
+        IntStream.range(0, r.length).parallel().forEach(i -> r[i] = classify(table, i));
+        AtomicInteger changed = new AtomicInteger();
+        do {
+            changed.set(0);
+            IntStream.range(0, r.length).parallel().forEach(i -> {
+                if(r[i] == G_UNKNOWN && wins(table, i, r)){ r[i] = G_WIN; changed.incrementAndGet(); }
+            });
+        } while(changed.get() > 0);
+        long[] bits = new long[r.length / 64];
+        for(int i=0;i<r.length;i++) if(r[i] == G_WIN) bits[i >>> 6] |= 1L << i;
+        return bits;
+    }
+
+    private static int pieceSquare(int table, int idx){ return table == KPK ? pawnSquare(idx >>> 13) : idx >>> 13; }
+
+    // Felder, die die weiße Zusatzfigur angreift (Belegung occ für Türme/Damen)
+    private static long pieceAttacks(int table, int x, long occ){
+        return switch(table){
+            case KPK -> Bitboards.PAWN_ATTACKS[0][x];
+            case KRK -> Bitboards.rookAttacks(x, occ);
+            default -> Bitboards.queenAttacks(x, occ);
+        };
+    }
+
+    private static byte classify(int table, int i){
+        int stm = i & 1, wk = (i >>> 1) & 63, bk = (i >>> 7) & 63, x = pieceSquare(table, i);
+        if(wk == bk || wk == x || bk == x) return G_INVALID;
+        if((Bitboards.kingAttacks(wk) & (1L << bk)) != 0) return G_INVALID;
+        long occ = (1L << wk) | (1L << bk) | (1L << x);
+        boolean blackInCheck = (pieceAttacks(table, x, occ) & (1L << bk)) != 0;
+        if(stm == 0){
+            if(blackInCheck) return G_INVALID; // Schwarz hätte im Schach gezogen
+            // KPK: Umwandlung, die der schwarze König nicht schlagen kann
+            int promo = x + 8;
+            if(table == KPK && (x >>> 3) == 6 && promo != wk && promo != bk
+                    && ((Bitboards.kingAttacks(bk) & (1L << promo)) == 0 || (Bitboards.kingAttacks(wk) & (1L << promo)) != 0))
+                return G_WIN;
+            return G_UNKNOWN;
+        }
+        if(blackKingMoves(table, wk, bk, x) == 0) return blackInCheck ? G_WIN : G_DRAW;
+        return G_UNKNOWN;
+    }
+
+    // Zielfelder des schwarzen Königs; Schlagen der Figur nur, wenn Weiß sie nicht deckt
+    private static long blackKingMoves(int table, int wk, int bk, int x){
+        long occNoBk = (1L << wk) | (1L << x);
+        long attacked = Bitboards.kingAttacks(wk) | pieceAttacks(table, x, occNoBk);
+        return Bitboards.kingAttacks(bk) & ~attacked & ~(1L << wk);
+    }
+
+    private static boolean wins(int table, int i, byte[] r){
+        int stm = i & 1, wk = (i >>> 1) & 63, bk = (i >>> 7) & 63, x = pieceSquare(table, i);
+        int piece = i >>> 13;
+        if(stm == 0){
+            // Weiß: ein Zug in eine gewonnene Stellung genügt
+            for(long t = Bitboards.kingAttacks(wk) & ~Bitboards.kingAttacks(bk) & ~(1L << x); t != 0; t &= t-1){
+                if(r[index(1, Long.numberOfTrailingZeros(t), bk, piece)] == G_WIN) return true;
+            }
+            if(table == KPK){
+                int to = x + 8;
+                if((to >>> 3) < 7 && to != wk && to != bk){
+                    if(r[index(1, wk, bk, pawnIndex(to))] == G_WIN) return true;
+                    int to2 = to + 8;
+                    if((x >>> 3) == 1 && to2 != wk && to2 != bk && r[index(1, wk, bk, pawnIndex(to2))] == G_WIN) return true;
+                }
+            } else {
+                long occ = (1L << wk) | (1L << bk);
+                for(long t = pieceAttacks(table, x, occ) & ~occ; t != 0; t &= t-1){
+                    if(r[index(1, wk, bk, Long.numberOfTrailingZeros(t))] == G_WIN) return true;
+                }
+            }
+            return false;
+        }
+        // Schwarz: verloren, wenn jeder Zug in eine gewonnene Stellung führt (Schlagen der Figur ist remis)
+        long moves = blackKingMoves(table, wk, bk, x);
+        if(moves == 0 || (moves & (1L << x)) != 0) return false;
+        for(; moves != 0; moves &= moves-1){
+            if(r[index(0, wk, Long.numberOfTrailingZeros(moves), piece)] != G_WIN) return false;
+        }
+        return true;
+    }
+
+    // handgeprüfte Stellungen: FEN und erwartetes Ergebnis für die Seite am Zug
+    private static final Object[][] CASES = {
+            {"4k3/8/4K3/4P3/8/8/8/8 w - - 0 1", WIN},    // König vor dem Bauern auf der 6. Reihe
+            {"4k3/8/4K3/4P3/8/8/8/8 b - - 0 1", LOSS},
+            {"4k3/4P3/4K3/8/8/8/8/8 b - - 0 1", DRAW},   // Patt
+            {"k7/8/8/8/P7/8/8/K7 w - - 0 1", DRAW},      // Randbauer, König in der Ecke
+            {"7k/8/P7/8/8/8/8/7K w - - 0 1", WIN},       // König außerhalb des Quadrats
+            {"8/8/8/8/4p3/4k3/8/4K3 b - - 0 1", WIN},    // dasselbe mit Schwarz als stärkerer Seite
+            {"8/8/8/8/4p3/4k3/8/4K3 w - - 0 1", LOSS},
+            {"8/8/8/8/8/3k4/3R4/7K b - - 0 1", DRAW},    // ungedeckter Turm wird geschlagen
+            {"8/8/8/8/8/2k5/3R4/7K w - - 0 1", WIN},     // Turm bedroht, aber Weiß am Zug
+            {"7k/8/6K1/8/8/8/8/R7 w - - 0 1", WIN},      // Matt in 1
+            {"7k/5Q2/6K1/8/8/8/8/8 b - - 0 1", DRAW},    // Patt
+            {"6k1/5Q2/6K1/8/8/8/8/8 b - - 0 1", LOSS},
+            {"8/8/8/8/3q4/8/8/k1K5 w - - 0 1", LOSS},
+            {"8/8/8/8/8/8/8/kN1K4 w - - 0 1", DRAW},
+    };
+
+    static long sink; // verhindert, dass der JIT die gemessenen Abfragen wegoptimiert
+
+    public static void main(String[] args){
+        long t0 = System.nanoTime();
+        init();
+        System.out.printf(Locale.ROOT, "Bitbasen bereit in %.2f s (%d Threads), %d KB%n", (System.nanoTime() - t0) / 1e9,
+                java.util.concurrent.ForkJoinPool.getCommonPoolParallelism(), (SIZE[KPK] + SIZE[KRK] + SIZE[KQK]) / 8 / 1024);
+        String[] names = {"KPK", "KRK", "KQK"};
+        for(int k=0;k<3;k++){
+            long wins = 0;
+            for(long w: tables[k]) wins += Long.bitCount(w);
+            System.out.printf(Locale.ROOT, "%s: %,d Stellungen gewonnen%n", names[k], wins);
+        }
+        String[] label = {"?", "remis", "Gewinn", "Verlust"};
+        int failures = 0;
+        for(Object[] c: CASES){
+            int got = probe(ChessGUI.Board.fromFEN((String)c[0])), expected = (Integer)c[1];
+            boolean ok = got == expected;
+            if(!ok) failures++;
+            System.out.printf("%-4s %-36s %s%s%n", ok ? "OK" : "FAIL", c[0], label[got], ok ? "" : " (erwartet " + label[expected] + ")");
+        }
+        ChessGUI.Board[] boards = new ChessGUI.Board[CASES.length];
+        for(int i=0;i<boards.length;i++) boards[i] = ChessGUI.Board.fromFEN((String)CASES[i][0]);
+        long sum = 0, n = 0, t1 = System.nanoTime();
+        while(System.nanoTime() - t1 < 500_000_000L){
+            for(ChessGUI.Board b: boards) sum += probe(b);
+            n += boards.length;
+        }
+        sink = sum;
+        System.out.printf(Locale.ROOT, "Abfrage: %.1f ns%n", (System.nanoTime() - t1) / (double)n);
+        System.exit(failures == 0 ? 0 : 1);
+    }
+}
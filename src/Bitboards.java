@@ -0,0 +1,179 @@
+/**
+ * Bitboard helpers for {@link ChessGUI.Board}. Squares use the same indexing
+ * as the board ({@code rank*8+file}, a1=0, h8=63); bit {@code i} of a
+ * {@code long} stands for square {@code i}.
+ */
+final class Bitboards {
+    private Bitboards() {}
+
+    // Index der Figurtypen in den Bitboard-Arrays (Reihenfolge wie PieceType)
+    static final int KING=0, QUEEN=1, ROOK=2, BISHOP=3, KNIGHT=4, PAWN=5;
+
+    static final long FILE_A = 0x0101010101010101L;
+    static final long FILE_H = FILE_A << 7;
+    static final long NOT_A  = ~FILE_A;
+    static final long NOT_H  = ~FILE_H;
+    static final long NOT_AB = ~(FILE_A | (FILE_A << 1));
+    static final long NOT_GH = ~(FILE_H | (FILE_H >>> 1));
+    static final long RANK_1 = 0xFFL;
+    static final long RANK_8 = RANK_1 << 56;
+
+    /** Index into {@code Board.bb} for a piece type and side. */
+    static int index(ChessGUI.PieceType t, ChessGUI.Side s){ return s.ordinal()*6 + t.ordinal(); }
+
+    // Vorberechnete Angriffe der Springer, Könige und Bauern (PAWN_ATTACKS[side][sq])
+    static final long[] KNIGHT_ATTACKS = new long[64];
+    static final long[] KING_ATTACKS = new long[64];
+    static final long[][] PAWN_ATTACKS = new long[2][64];
+
+    // BETWEEN[a][b]: Felder echt zwischen a und b; LINE[a][b]: ganze Linie durch a und b (0 wenn nicht auf einer Linie)
+    static final long[][] BETWEEN = new long[64][64];
+    static final long[][] LINE = new long[64][64];
+
+    // Magic Bitboards für Läufer und Türme: Index = ((occ & mask) * magic) >>> shift
+    private static final long[] ROOK_MASK = new long[64], BISHOP_MASK = new long[64];
+    // per Zufallssuche (xorshift, Kandidaten mit wenigen gesetzten Bits) gefunden und beim Laden geprüft
+    private static final long[] ROOK_MAGIC = {
+            0x008000908064C000L, 0x0040200040001000L, 0x0180100080A0010AL, 0x8880041000800800L,
+            0x1200100201200804L, 0x0200020004011008L, 0x2180010000800600L, 0x0200005088210204L,
+            0x0000800080204001L, 0x1000804000802001L, 0x8240801000200080L, 0x8611001004200900L,
+            0x008180800C001800L, 0x0100800200800400L, 0x0A02000102000408L, 0x8020802300104280L,
+            0x0080004000402000L, 0xE010104000402000L, 0x0800808010002000L, 0xA280210008100100L,
+            0x0001818014000800L, 0xA002010100080400L, 0x0008040088020130L, 0x0001020004048845L,
+            0x0081826280004004L, 0x2020810900284000L, 0x0200100080802000L, 0x0200080080100080L,
+            0x8083080100100500L, 0x4406000901000400L, 0x0005020080800100L, 0x0090204200008114L,
+            0x0010400094800420L, 0x0900804000802002L, 0x0201001841002000L, 0x4100080080801000L,
+            0x4540040080800800L, 0x0000800400800200L, 0x9281800100808200L, 0x8004048102000854L,
+            0x4420802040008006L, 0x0880500020004002L, 0x0801200241050010L, 0x8400080010008080L,
+            0x0008000500090010L, 0x0082009084020008L, 0x4012000108020004L, 0x9000104D08860004L,
+            0x2004204114800100L, 0x0148802112400300L, 0x0202842000100880L, 0x001B080080900080L,
+            0x001A002008100600L, 0x0004008004020080L, 0x5181000600040300L, 0x0000044401128A00L,
+            0x8044110480002441L, 0x1023012082044112L, 0x00804080200A0012L, 0x000420310A004A42L,
+            0x0023001004020801L, 0x0882001008040102L, 0x000230088118020CL, 0x0000019025040042L
+    };
+    private static final long[] BISHOP_MAGIC = {
+            0x1010220204082A00L, 0x80E0020202002804L, 0x2008480104200020L, 0x000220920280002DL,
+            0x32040421000B0284L, 0x1002080404000400L, 0x0004160892080040L, 0x2203024206204201L,
+            0x0002404264010200L, 0x1120908408428124L, 0xB100424403002280L, 0x240008060440C288L,
+            0x2040040420490400L, 0x0100620210040022L, 0x0400084104202028L, 0x0010050080908820L,
+            0x0C90A04490824802L, 0x000200A008210130L, 0x0C08001000204010L, 0x0008000186014480L,
+            0x0601044820080021L, 0x0002000101013100L, 0x1400A08108080204L, 0x0250401104485410L,
+            0x4820240810142843L, 0x0009142A20182200L, 0x0848140048440020L, 0x2020120000400440L,
+            0x0108840200802003L, 0x0009070082009492L, 0x020C0C0038424245L, 0xCA44005808210410L,
+            0x8011212000500404L, 0x2028840510101008L, 0x0004042A00041400L, 0x0624020080980080L,
+            0x1820410040840040L, 0x2201004202050100L, 0x402A088A24040224L, 0x0242061040002400L,
+            0x90020202400821A0L, 0x00C9009004E01002L, 0x58C2060202023100L, 0x0000012214040800L,
+            0x0210846810100200L, 0x0004208081010200L, 0x01A4108404442100L, 0x8054082C80280106L,
+            0x0004144904104208L, 0x00324C0A11104000L, 0x1000020231040100L, 0x2080001042020004L,
+            0x0544021020288104L, 0x1103501408083020L, 0x4010451004960002L, 0x003010091C44902CL,
+            0x0102402884202000L, 0x0480804C00841086L, 0x04602C8602210400L, 0x0000004000420200L,
+            0x0040000020442C18L, 0x4483804089094100L, 0x80000B0248020400L, 0x0045010808008680L
+    };
+    private static final int[] ROOK_SHIFT = new int[64], BISHOP_SHIFT = new int[64];
+    private static final long[][] ROOK_TABLE = new long[64][], BISHOP_TABLE = new long[64][];
+
+    static {
+        for(int sq=0;sq<64;sq++){
+            long b = 1L << sq;
+            KNIGHT_ATTACKS[sq] = ((b << 17) & NOT_A) | ((b << 15) & NOT_H) | ((b << 10) & NOT_AB) | ((b << 6) & NOT_GH)
+                               | ((b >>> 17) & NOT_H) | ((b >>> 15) & NOT_A) | ((b >>> 10) & NOT_GH) | ((b >>> 6) & NOT_AB);
+            long lr = ((b << 1) & NOT_A) | ((b >>> 1) & NOT_H);
+            long row = b | lr;
+            KING_ATTACKS[sq] = lr | (row << 8) | (row >>> 8);
+            PAWN_ATTACKS[0][sq] = ((b << 9) & NOT_A) | ((b << 7) & NOT_H);
+            PAWN_ATTACKS[1][sq] = ((b >>> 7) & NOT_A) | ((b >>> 9) & NOT_H);
+        }
+        for(int sq=0;sq<64;sq++){
+            ROOK_MASK[sq] = slidingMask(sq, true);
+            BISHOP_MASK[sq] = slidingMask(sq, false);
+            ROOK_SHIFT[sq] = 64 - Long.bitCount(ROOK_MASK[sq]);
+            BISHOP_SHIFT[sq] = 64 - Long.bitCount(BISHOP_MASK[sq]);
+            ROOK_TABLE[sq] = fillTable(sq, true, ROOK_MASK[sq], ROOK_MAGIC[sq], ROOK_SHIFT[sq]);
+            BISHOP_TABLE[sq] = fillTable(sq, false, BISHOP_MASK[sq], BISHOP_MAGIC[sq], BISHOP_SHIFT[sq]);
+        }
+        for(int a=0;a<64;a++) for(int b=0;b<64;b++){
+            if(a == b) continue;
+            long ab = (1L << a) | (1L << b);
+            if((slowRookAttacks(a, 0) & (1L << b)) != 0){
+                BETWEEN[a][b] = slowRookAttacks(a, 1L << b) & slowRookAttacks(b, 1L << a);
+                LINE[a][b] = (slowRookAttacks(a, 0) & slowRookAttacks(b, 0)) | ab;
+            } else if((slowBishopAttacks(a, 0) & (1L << b)) != 0){
+                BETWEEN[a][b] = slowBishopAttacks(a, 1L << b) & slowBishopAttacks(b, 1L << a);
+                LINE[a][b] = (slowBishopAttacks(a, 0) & slowBishopAttacks(b, 0)) | ab;
+            }
+        }
+    }
+
+    static long knightAttacks(int sq){ return KNIGHT_ATTACKS[sq]; }
+
+    static long kingAttacks(int sq){ return KING_ATTACKS[sq]; }
+
+    /** Squares attacked by a pawn of side {@code s} standing on {@code sq}. */
+    static long pawnAttacks(ChessGUI.Side s, int sq){ return PAWN_ATTACKS[s.ordinal()][sq]; }
+
+    static long rookAttacks(int sq, long occ){
+        return ROOK_TABLE[sq][(int)(((occ & ROOK_MASK[sq]) * ROOK_MAGIC[sq]) >>> ROOK_SHIFT[sq])];
+    }
+
+    static long bishopAttacks(int sq, long occ){
+        return BISHOP_TABLE[sq][(int)(((occ & BISHOP_MASK[sq]) * BISHOP_MAGIC[sq]) >>> BISHOP_SHIFT[sq])];
+    }
+
+    static long queenAttacks(int sq, long occ){ return rookAttacks(sq, occ) | bishopAttacks(sq, occ); }
+
+    /** Ray-walking reference for the magic tables (also used by {@code Bench}). */
+    static long slowRookAttacks(int sq, long occ){
+        return ray(sq, occ, 1, 0) | ray(sq, occ, -1, 0) | ray(sq, occ, 0, 1) | ray(sq, occ, 0, -1);
+    }
+
+    static long slowBishopAttacks(int sq, long occ){
+        return ray(sq, occ, 1, 1) | ray(sq, occ, 1, -1) | ray(sq, occ, -1, 1) | ray(sq, occ, -1, -1);
+    }
+
+    // Strahl bis einschließlich zum ersten besetzten Feld
+    private static long ray(int sq, long occ, int df, int dr){
+        long res = 0;
+        int f = sq % 8 + df, r = sq / 8 + dr;
+        while(f >= 0 && f < 8 && r >= 0 && r < 8){
+            long b = 1L << (r*8 + f);
+            res |= b;
+            if((occ & b) != 0) break;
+            f += df; r += dr;
+        }
+        return res;
+    }
+
+    // relevante Blocker: Strahlen ohne das jeweilige Randfeld
+    private static long slidingMask(int sq, boolean rook){
+        long rays = rook ? slowRookAttacks(sq, 0) : slowBishopAttacks(sq, 0);
+        int f = sq % 8, r = sq / 8;
+        long edges = ((RANK_1 | RANK_8) & ~(0xFFL << (r*8))) | ((FILE_A | FILE_H) & ~(FILE_A << f));
+        return rays & ~edges;
+    }
+
+    private static long[] fillTable(int sq, boolean rook, long mask, long magic, int shift){
+        long[] table = new long[1 << (64 - shift)];
+        boolean[] used = new boolean[table.length];
+        // alle Teilmengen der Maske durchlaufen (Carry-Rippler)
+        long sub = 0;
+        do {
+            long att = rook ? slowRookAttacks(sq, sub) : slowBishopAttacks(sq, sub);
+            int idx = (int)((sub * magic) >>> shift);
+            if(used[idx] && table[idx] != att) throw new IllegalStateException("Magic-Kollision auf Feld " + sq);
+            used[idx] = true;
+            table[idx] = att;
+            sub = (sub - mask) & mask;
+        } while(sub != 0);
+        return table;
+    }
+
+    /** Debug output: rank 8 first, {@code 1} for set bits. */
+    static String toString(long b){
+        StringBuilder sb = new StringBuilder();
+        for(int r=7;r>=0;r--){
+            for(int f=0;f<8;f++) sb.append((b >>> (r*8+f) & 1L) != 0 ? '1' : '.');
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
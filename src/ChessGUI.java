@@ -10,13 +10,18 @@ import java.io.*;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Deque;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.Hashtable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.Comparator;
 import javax.swing.event.MouseInputAdapter;
@@ -55,6 +60,12 @@ public class ChessGUI {
     static final class Piece {
         final PieceType type; final Side side;
         Piece(PieceType t, Side s){ type=t; side=s; }
+        private static final Piece[] CACHE = new Piece[12];
+        static {
+            for(Side s: Side.values()) for(PieceType t: PieceType.values()) CACHE[Bitboards.index(t,s)] = new Piece(t,s);
+        }
+        // geteilte Instanzen, damit Züge keine neuen Piece-Objekte erzeugen
+        static Piece of(PieceType t, Side s){ return CACHE[Bitboards.index(t,s)]; }
         char symbolUnicode(){
             return switch(type){
                 case KING-> (side==Side.WHITE?'♔':'♚');
@@ -82,11 +93,32 @@ public class ChessGUI {
 
     static final class Board {
         final Piece[] sq = new Piece[64];
+        // Bitboards: ein long pro Figurtyp und Seite (Index Bitboards.index), dazu Belegung je Seite und gesamt
+        final long[] bb = new long[12];
+        final long[] occ = new long[2];
+        long occAll;
+        // Zobrist-Schlüssel über Figuren, Zugrecht, Rochaderechte und e.p.-Linie; inkrementell gepflegt
+        long key;
+        // nur über die Bauern (Schlüssel der PawnTable)
+        long pawnKey;
+        // Material + Figur-Feld-Tabellen aus Sicht von Weiß (Eval.PSQ, Mittel- und Endspiel gepackt), inkrementell in set() gepflegt
+        int psqt;
+        // optionaler NNUE-Akkumulator (null = keiner); wird wie psqt in set() nachgeführt
+        Nnue.Accumulator nnue;
         Side sideToMove = Side.WHITE;
         int enPassant = -1;
         boolean wCastleK=true,wCastleQ=true,bCastleK=true,bCastleQ=true;
         int halfmoveClock=0, fullmoveNumber=1;
 
+        // Undo-Stack für make/unmake; wird erst beim ersten make() angelegt und von copy() nicht übernommen
+        static final int MAX_PLY = 128;
+        private UndoInfo[] undoStack;
+        private int undoTop;
+
+        // Schlüssel aller Vorgängerstellungen (Partie + Suchpfad), jüngste zuletzt; von copy() übernommen
+        private long[] keyHistory;
+        private int historyLen;
+
         static int idx(int f,int r){ return r*8+f; }
         static int file(int i){ return i%8; }
         static int rank(int i){ return i/8; }
@@ -94,26 +126,16 @@ public class ChessGUI {
 
         static Board initial(){
             Board b=new Board();
-            // Weiß
-            b.sq[idx(0,0)]=new Piece(PieceType.ROOK,Side.WHITE);
-            b.sq[idx(1,0)]=new Piece(PieceType.KNIGHT,Side.WHITE);
-            b.sq[idx(2,0)]=new Piece(PieceType.BISHOP,Side.WHITE);
-            b.sq[idx(3,0)]=new Piece(PieceType.QUEEN,Side.WHITE);
-            b.sq[idx(4,0)]=new Piece(PieceType.KING,Side.WHITE);
-            b.sq[idx(5,0)]=new Piece(PieceType.BISHOP,Side.WHITE);
-            b.sq[idx(6,0)]=new Piece(PieceType.KNIGHT,Side.WHITE);
-            b.sq[idx(7,0)]=new Piece(PieceType.ROOK,Side.WHITE);
-            for(int f=0;f<8;f++) b.sq[idx(f,1)]=new Piece(PieceType.PAWN,Side.WHITE);
-            // Schwarz
-            b.sq[idx(0,7)]=new Piece(PieceType.ROOK,Side.BLACK);
-            b.sq[idx(1,7)]=new Piece(PieceType.KNIGHT,Side.BLACK);
-            b.sq[idx(2,7)]=new Piece(PieceType.BISHOP,Side.BLACK);
-            b.sq[idx(3,7)]=new Piece(PieceType.QUEEN,Side.BLACK);
-            b.sq[idx(4,7)]=new Piece(PieceType.KING,Side.BLACK);
-            b.sq[idx(5,7)]=new Piece(PieceType.BISHOP,Side.BLACK);
-            b.sq[idx(6,7)]=new Piece(PieceType.KNIGHT,Side.BLACK);
-            b.sq[idx(7,7)]=new Piece(PieceType.ROOK,Side.BLACK);
-            for(int f=0;f<8;f++) b.sq[idx(f,6)]=new Piece(PieceType.PAWN,Side.BLACK);
+            PieceType[] back={PieceType.ROOK,PieceType.KNIGHT,PieceType.BISHOP,PieceType.QUEEN,PieceType.KING,PieceType.BISHOP,PieceType.KNIGHT,PieceType.ROOK};
+            for(int f=0;f<8;f++){
+                // Weiß
+                b.set(idx(f,0), Piece.of(back[f],Side.WHITE));
+                b.set(idx(f,1), Piece.of(PieceType.PAWN,Side.WHITE));
+                // Schwarz
+                b.set(idx(f,7), Piece.of(back[f],Side.BLACK));
+                b.set(idx(f,6), Piece.of(PieceType.PAWN,Side.BLACK));
+            }
+            b.key=b.computeKey();
             return b;
         }
 
@@ -136,7 +158,7 @@ public class ChessGUI {
                             case 'b'->PieceType.BISHOP; case 'n'->PieceType.KNIGHT; case 'p'->PieceType.PAWN;
                             default -> throw new IllegalArgumentException("Bad piece char in FEN: "+c);
                         };
-                        b.sq[idx(f,r)] = new Piece(t,s); f++;
+                        b.set(idx(f,r), Piece.of(t,s)); f++;
                     }
                 }
                 if(f!=8) throw new IllegalArgumentException("FEN Spaltenfehler in Rang "+(8-r));
@@ -148,19 +170,25 @@ public class ChessGUI {
             b.bCastleK = cast.contains("k");
             b.bCastleQ = cast.contains("q");
             b.enPassant = "-".equals(parts[3]) ? -1 : UCI.parseSquare(parts[3]);
+            if(b.enPassant!=-1 && !b.epCapturable(b.enPassant, b.sideToMove.opposite())) b.enPassant=-1;
             if(parts.length>=6){
                 try { b.halfmoveClock = Integer.parseInt(parts[4]); } catch(Exception ignored){}
                 try { b.fullmoveNumber = Integer.parseInt(parts[5]); } catch(Exception ignored){}
             }
+            b.key=b.computeKey();
             return b;
         }
 
         Board copy(){
             Board b=new Board();
             System.arraycopy(sq,0,b.sq,0,64);
+            System.arraycopy(bb,0,b.bb,0,12);
+            b.occ[0]=occ[0]; b.occ[1]=occ[1]; b.occAll=occAll; b.key=key; b.pawnKey=pawnKey; b.psqt=psqt;
+            if(nnue!=null) b.nnue=nnue.copy();
             b.sideToMove=sideToMove; b.enPassant=enPassant;
             b.wCastleK=wCastleK; b.wCastleQ=wCastleQ; b.bCastleK=bCastleK; b.bCastleQ=bCastleQ;
             b.halfmoveClock=halfmoveClock; b.fullmoveNumber=fullmoveNumber;
+            if(historyLen>0){ b.keyHistory=Arrays.copyOf(keyHistory, historyLen+MAX_PLY); b.historyLen=historyLen; }
             return b;
         }
         String toFEN(){
@@ -197,231 +225,593 @@ public class ChessGUI {
             return sb.toString();
         }
         Piece at(int i){ return (i>=0&&i<64)?sq[i]:null; }
-        int kingSquare(Side s){ for(int i=0;i<64;i++){ Piece p=sq[i]; if(p!=null&&p.type==PieceType.KING&&p.side==s) return i; } return -1; }
 
-        boolean isInCheck(Side s){ int k=kingSquare(s); return isSquareAttacked(k, s.opposite()); }
+        // setzt (oder leert bei p==null) ein Feld und hält Bitboards, Schlüssel und psqt synchron
+        void set(int i, Piece p){
+            long m=1L<<i;
+            Piece old=sq[i];
+            if(old!=null){
+                int k=Bitboards.index(old.type,old.side);
+                bb[k]&=~m; occ[old.side.ordinal()]&=~m; occAll&=~m;
+                key^=Zobrist.PIECE[k][i];
+                if(old.type==PieceType.PAWN) pawnKey^=Zobrist.PIECE[k][i];
+                psqt-=Eval.PSQ[k][i];
+                if(nnue!=null) nnue.remove(k,i);
+            }
+            sq[i]=p;
+            if(p!=null){
+                int k=Bitboards.index(p.type,p.side);
+                bb[k]|=m; occ[p.side.ordinal()]|=m; occAll|=m;
+                key^=Zobrist.PIECE[k][i];
+                if(p.type==PieceType.PAWN) pawnKey^=Zobrist.PIECE[k][i];
+                psqt+=Eval.PSQ[k][i];
+                if(nnue!=null) nnue.add(k,i);
+            }
+        }
+
+        /** Hängt einen NNUE-Akkumulator für {@code net} an (komplett berechnet); danach inkrementell über set(). */
+        void attachNnue(Nnue net){
+            nnue=new Nnue.Accumulator(net);
+            nnue.refresh(this);
+        }
+        void detachNnue(){ nnue=null; }
+
+        int castleMask(){ return (wCastleK?1:0) | (wCastleQ?2:0) | (bCastleK?4:0) | (bCastleQ?8:0); }
+
+        // e.p.-Feld nur, wenn ein gegnerischer Bauer dorthin schlagen kann: sonst unterschiede sich
+        // der Schlüssel nach einem Doppelschritt von derselben Stellung ohne e.p. (Wiederholungen, TT)
+        private boolean epCapturable(int ep, Side pusher){
+            return (Bitboards.pawnAttacks(pusher, ep) & bb[Bitboards.index(PieceType.PAWN, pusher.opposite())])!=0;
+        }
+
+        /** Berechnet den Zobrist-Schlüssel komplett neu (Debug-Abgleich mit {@link #key}). */
+        long computeKey(){
+            long k=0;
+            for(int i=0;i<12;i++) for(long pcs=bb[i]; pcs!=0; pcs&=pcs-1) k^=Zobrist.PIECE[i][Long.numberOfTrailingZeros(pcs)];
+            if(sideToMove==Side.BLACK) k^=Zobrist.SIDE;
+            k^=Zobrist.CASTLE[castleMask()];
+            if(enPassant!=-1) k^=Zobrist.EP_FILE[file(enPassant)];
+            return k;
+        }
+        long computePawnKey(){
+            long k=0;
+            for(int s=0;s<2;s++){
+                int i=s*6+Bitboards.PAWN;
+                for(long pcs=bb[i]; pcs!=0; pcs&=pcs-1) k^=Zobrist.PIECE[i][Long.numberOfTrailingZeros(pcs)];
+            }
+            return k;
+        }
+        boolean keyConsistent(){ return key==computeKey() && pawnKey==computePawnKey(); }
+        long pieces(PieceType t, Side s){ return bb[Bitboards.index(t,s)]; }
+
+        int kingSquare(Side s){
+            long k=bb[s.ordinal()*6+Bitboards.KING];
+            return k==0 ? -1 : Long.numberOfTrailingZeros(k);
+        }
+
+        boolean isInCheck(Side s){ int k=kingSquare(s); return k>=0 && isSquareAttacked(k, s.opposite()); }
 
         boolean isSquareAttacked(int target, Side by){
-            int tx=file(target), ty=rank(target);
-            for(int i=0;i<64;i++){
-                Piece p=sq[i]; if(p==null||p.side!=by) continue;
-                int x=file(i), y=rank(i);
-                switch(p.type){
-                    case PAWN -> {
-                        int dir=(by==Side.WHITE)?1:-1;
-                        if(x+1==tx && y+dir==ty) return true;
-                        if(x-1==tx && y+dir==ty) return true;
+            int base=by.ordinal()*6;
+            if((Bitboards.knightAttacks(target) & bb[base+Bitboards.KNIGHT])!=0) return true;
+            if((Bitboards.kingAttacks(target) & bb[base+Bitboards.KING])!=0) return true;
+            // ein Bauer von "by" greift target an, wenn ein gegnerischer Bauer auf target ihn angreifen würde
+            if((Bitboards.pawnAttacks(by.opposite(),target) & bb[base+Bitboards.PAWN])!=0) return true;
+            long queens=bb[base+Bitboards.QUEEN];
+            long rq=bb[base+Bitboards.ROOK]|queens, bq=bb[base+Bitboards.BISHOP]|queens;
+            if(rq!=0 && (Bitboards.rookAttacks(target,occAll) & rq)!=0) return true;
+            return bq!=0 && (Bitboards.bishopAttacks(target,occAll) & bq)!=0;
+        }
+
+        /**
+         * Alle von {@code by} ausgehenden Angriffe auf {@code target} bei Belegung {@code occ}
+         * (für Königszüge und en passant mit veränderter Belegung).
+         */
+        long attackersTo(int target, Side by, long occ){
+            int base=by.ordinal()*6;
+            long queens=bb[base+Bitboards.QUEEN];
+            return (Bitboards.knightAttacks(target) & bb[base+Bitboards.KNIGHT])
+                 | (Bitboards.kingAttacks(target) & bb[base+Bitboards.KING])
+                 | (Bitboards.pawnAttacks(by.opposite(),target) & bb[base+Bitboards.PAWN])
+                 | (Bitboards.rookAttacks(target,occ) & (bb[base+Bitboards.ROOK]|queens))
+                 | (Bitboards.bishopAttacks(target,occ) & (bb[base+Bitboards.BISHOP]|queens));
+        }
+
+        // Static Exchange Evaluation: Figurwerte (Index wie Bitboards, König nur als letzter Schläger relevant) und Swap-Liste
+        private static final int[] SEE_VAL = {20_000, 900, 500, 330, 320, 100};
+        private final int[] seeGain = new int[32];
+
+        /**
+         * Materialbilanz des Schlagabtauschs auf {@code m.to}, wenn beide Seiten immer mit der
+         * billigsten Figur zurückschlagen und jederzeit aufhören dürfen (Röntgenangriffe hinter
+         * den Schlägern eingeschlossen). Ohne Allokation; Fesselungen und Umwandlungen beim
+         * Zurückschlagen werden nicht berücksichtigt. Ruhige Züge: Verlust, falls die Figur dort hängt.
+         */
+        int see(Move m){ return see(Moves.of(m)); }
+
+        int see(int m){
+            if(Moves.isCastle(m)) return 0;
+            int from=Moves.from(m), to=Moves.to(m);
+            Piece mover=sq[from];
+            long occupied=occAll ^ (1L<<from);
+            int[] gain=seeGain;
+            if(Moves.isEnPassant(m)){
+                occupied ^= 1L<<(mover.side==Side.WHITE ? to-8 : to+8);
+                gain[0]=SEE_VAL[Bitboards.PAWN];
+            } else gain[0] = sq[to]!=null ? SEE_VAL[sq[to].type.ordinal()] : 0;
+            int onSquare=SEE_VAL[mover.type.ordinal()];
+            if(Moves.isPromotion(m)){
+                onSquare=SEE_VAL[Moves.promo(m).ordinal()];
+                gain[0]+=onSquare-SEE_VAL[Bitboards.PAWN];
+            }
+            long bishops=bb[Bitboards.BISHOP]|bb[6+Bitboards.BISHOP]|bb[Bitboards.QUEEN]|bb[6+Bitboards.QUEEN];
+            long rooks=bb[Bitboards.ROOK]|bb[6+Bitboards.ROOK]|bb[Bitboards.QUEEN]|bb[6+Bitboards.QUEEN];
+            long attackers=(attackersTo(to, Side.WHITE, occupied) | attackersTo(to, Side.BLACK, occupied)) & occupied;
+            int side=mover.side.opposite().ordinal();
+            int d=0;
+            while(true){
+                // billigster Schläger der Seite am Zug (König nur, wenn der Gegner nichts mehr hat)
+                long mine=attackers & occ[side];
+                if(mine==0) break;
+                int t=Bitboards.PAWN;
+                while((mine & bb[side*6+t])==0) t--;
+                if(t==Bitboards.KING && (attackers & occ[1-side])!=0) break;
+                d++;
+                gain[d]=onSquare-gain[d-1];
+                if(Math.max(-gain[d-1], gain[d])<0) break; // Ergebnis steht fest
+                occupied ^= Long.lowestOneBit(mine & bb[side*6+t]);
+                // Röntgen: Läufer/Türme/Damen hinter dem Schläger werden frei
+                if(t==Bitboards.PAWN || t==Bitboards.BISHOP || t==Bitboards.QUEEN) attackers |= Bitboards.bishopAttacks(to, occupied) & bishops;
+                if(t==Bitboards.ROOK || t==Bitboards.QUEEN) attackers |= Bitboards.rookAttacks(to, occupied) & rooks;
+                attackers &= occupied;
+                onSquare=SEE_VAL[t];
+                side=1-side;
+            }
+            while(d>0){ gain[d-1]=-Math.max(-gain[d-1], gain[d]); d--; }
+            return gain[0];
+        }
+
+        /** Figuren von {@code s} (ohne König), die der Gegner mit Gewinn schlagen kann (SEE &gt; 0). */
+        long hangingPieces(Side s){
+            long res=0;
+            Side opp=s.opposite();
+            long pcs=occ[s.ordinal()] & ~bb[s.ordinal()*6+Bitboards.KING];
+            for(; pcs!=0; pcs&=pcs-1){
+                int i=Long.numberOfTrailingZeros(pcs);
+                long att=attackersTo(i, opp, occAll);
+                if(att==0) continue;
+                // mit dem billigsten Angreifer prüfen
+                int t=Bitboards.PAWN, o=opp.ordinal()*6;
+                while((att & bb[o+t])==0) t--;
+                int from=Long.numberOfTrailingZeros(att & bb[o+t]);
+                if(see(Moves.make(from, i, Moves.CAPTURE))>0) res|=1L<<i;
+            }
+            return res;
+        }
+
+        // eigene Figuren, die als einzige zwischen König und gegnerischem Läufer/Turm/Dame stehen
+        long pinnedPieces(Side me){
+            int ksq=kingSquare(me);
+            if(ksq<0) return 0;
+            Side opp=me.opposite();
+            int ob=opp.ordinal()*6;
+            long queens=bb[ob+Bitboards.QUEEN], enemy=occ[opp.ordinal()];
+            long snipers=(Bitboards.rookAttacks(ksq,enemy) & (bb[ob+Bitboards.ROOK]|queens))
+                       | (Bitboards.bishopAttacks(ksq,enemy) & (bb[ob+Bitboards.BISHOP]|queens));
+            long pinned=0;
+            for(; snipers!=0; snipers&=snipers-1){
+                long between=Bitboards.BETWEEN[ksq][Long.numberOfTrailingZeros(snipers)] & occAll;
+                if(between!=0 && (between & (between-1))==0) pinned |= between & occ[me.ordinal()];
+            }
+            return pinned;
+        }
+
+        // Adapter für GUI/UCI/Analyse; Suche und Perft nutzen die int-Varianten mit eigenem Puffer
+        List<Move> legalMoves(){
+            int[] buf=new int[Moves.MAX_MOVES];
+            return Moves.toList(buf, generateLegal(buf, false));
+        }
+
+        List<Move> legalCaptures(){
+            int[] buf=new int[Moves.MAX_MOVES];
+            return Moves.toList(buf, generateLegal(buf, true));
+        }
+
+        /** Legal moves as packed ints ({@link Moves}) into {@code buf}; returns their number. */
+        int legalMoves(int[] buf){ return generateLegal(buf, false); }
+
+        // nur Schlagzüge und Umwandlungen (Quiescence-Suche)
+        int legalCaptures(int[] buf){ return generateLegal(buf, true); }
+
+        /**
+         * Erzeugt direkt nur legale Züge: Schachgeber und Fesselungen werden einmal pro Stellung
+         * bestimmt, nur Königszüge und en passant werden einzeln gegen Angriffe geprüft.
+         */
+        private int generateLegal(int[] list, boolean tacticalOnly){
+            Side me=sideToMove, opp=me.opposite();
+            int ksq=kingSquare(me);
+            if(ksq<0){ // Stellung ohne König
+                int n=filterLegal(list), k=0;
+                for(int i=0;i<n;i++) if(!tacticalOnly || !Moves.isQuiet(list[i])) list[k++]=list[i];
+                return k;
+            }
+            int n=0;
+            int base=me.ordinal()*6;
+            long own=occ[me.ordinal()], enemy=occ[opp.ordinal()], empty=~occAll;
+
+            long checkers=attackersTo(ksq,opp,occAll);
+            if((checkers & (checkers-1))==0){ // kein Doppelschach: auch andere Figuren dürfen ziehen
+                // bei Schach nur Schlagen des Schachgebers oder Dazwischenziehen
+                long target = checkers==0 ? ~own : checkers | Bitboards.BETWEEN[ksq][Long.numberOfTrailingZeros(checkers)];
+                long pinned=pinnedPieces(me);
+                long pieceTarget = tacticalOnly ? target & enemy : target;
+
+                int dir=(me==Side.WHITE)?8:-8;
+                int startRank=(me==Side.WHITE)?1:6;
+                int promoteRank=(me==Side.WHITE)?6:1;
+                for(long pawns=bb[base+Bitboards.PAWN]; pawns!=0; pawns&=pawns-1){
+                    int i=Long.numberOfTrailingZeros(pawns);
+                    long allowed = (pinned & (1L<<i))!=0 ? Bitboards.LINE[ksq][i] & target : target;
+                    int y=rank(i), to=i+dir;
+                    if(to>=0 && to<64 && (empty & (1L<<to))!=0 && (!tacticalOnly || y==promoteRank)){
+                        if((allowed & (1L<<to))!=0){
+                            if(y==promoteRank) n=addPromotions(list,n,i,to,false);
+                            else list[n++]=Moves.make(i,to);
+                        }
+                        if(y==startRank && (empty & allowed & (1L<<(to+dir)))!=0) list[n++]=Moves.make(i,to+dir);
                     }
-                    case KNIGHT -> {
-                        int[][] N={{1,2},{2,1},{2,-1},{1,-2},{-1,-2},{-2,-1},{-2,1},{-1,2}};
-                        for(int[] d:N) if(x+d[0]==tx && y+d[1]==ty) return true;
+                    long att=Bitboards.pawnAttacks(me,i);
+                    for(long caps=att & enemy & allowed; caps!=0; caps&=caps-1){
+                        int j=Long.numberOfTrailingZeros(caps);
+                        if(y==promoteRank) n=addPromotions(list,n,i,j,true);
+                        else list[n++]=Moves.make(i,j,Moves.CAPTURE);
                     }
-                    case KING -> {
-                        for(int dx=-1;dx<=1;dx++) for(int dy=-1;dy<=1;dy++){
-                            if(dx==0&&dy==0) continue;
-                            if(x+dx==tx && y+dy==ty) return true;
-                        }
+                    if(enPassant!=-1 && (att & (1L<<enPassant))!=0 && enPassantLegal(i,ksq,opp)){
+                        list[n++]=Moves.make(i,enPassant,Moves.CAPTURE|Moves.EN_PASSANT);
                     }
-                    case BISHOP,ROOK,QUEEN -> {
-                        int[][] dirs = switch(p.type){
-                            case BISHOP -> new int[][]{{1,1},{1,-1},{-1,1},{-1,-1}};
-                            case ROOK   -> new int[][]{{1,0},{-1,0},{0,1},{0,-1}};
-                            default     -> new int[][]{{1,1},{1,-1},{-1,1},{-1,-1},{1,0},{-1,0},{0,1},{0,-1}};
-                        };
-                        for(int[] d: dirs){
-                            int fx=x+d[0], fy=y+d[1];
-                            while(in(fx,fy)){
-                                int j=idx(fx,fy);
-                                if(j==target) return true;
-                                if(sq[j]!=null) break;
-                                fx+=d[0]; fy+=d[1];
-                            }
-                        }
+                }
+                // gefesselte Springer können nie ziehen
+                for(long s=bb[base+Bitboards.KNIGHT] & ~pinned; s!=0; s&=s-1){
+                    int i=Long.numberOfTrailingZeros(s);
+                    n=addTargets(list,n,i,Bitboards.knightAttacks(i) & pieceTarget,enemy);
+                }
+                for(long s=bb[base+Bitboards.BISHOP]; s!=0; s&=s-1){
+                    int i=Long.numberOfTrailingZeros(s);
+                    n=addTargets(list,n,i,Bitboards.bishopAttacks(i,occAll) & pieceTarget & pinLine(pinned,ksq,i),enemy);
+                }
+                for(long s=bb[base+Bitboards.ROOK]; s!=0; s&=s-1){
+                    int i=Long.numberOfTrailingZeros(s);
+                    n=addTargets(list,n,i,Bitboards.rookAttacks(i,occAll) & pieceTarget & pinLine(pinned,ksq,i),enemy);
+                }
+                for(long s=bb[base+Bitboards.QUEEN]; s!=0; s&=s-1){
+                    int i=Long.numberOfTrailingZeros(s);
+                    n=addTargets(list,n,i,Bitboards.queenAttacks(i,occAll) & pieceTarget & pinLine(pinned,ksq,i),enemy);
+                }
+            }
+
+            // König: Zielfeld darf auch nach dem Wegziehen (Belegung ohne König) nicht angegriffen sein
+            long occNoKing=occAll & ~(1L<<ksq);
+            for(long kt=Bitboards.kingAttacks(ksq) & (tacticalOnly ? enemy : ~own); kt!=0; kt&=kt-1){
+                int j=Long.numberOfTrailingZeros(kt);
+                if(attackersTo(j,opp,occNoKing)==0) list[n++]=Moves.make(ksq,j,(enemy & (1L<<j))!=0 ? Moves.CAPTURE : 0);
+            }
+            // Rochade: nicht aus, durch oder in ein Schach
+            if(checkers==0 && !tacticalOnly){
+                long rooks=bb[base+Bitboards.ROOK];
+                int r=(me==Side.WHITE)?0:7;
+                boolean canK=(me==Side.WHITE)?wCastleK:bCastleK, canQ=(me==Side.WHITE)?wCastleQ:bCastleQ;
+                if(ksq==idx(4,r)){
+                    if(canK && (occAll & (0x60L<<(8*r)))==0 && (rooks & (1L<<idx(7,r)))!=0
+                            && !isSquareAttacked(idx(5,r),opp) && !isSquareAttacked(idx(6,r),opp)){
+                        list[n++]=Moves.make(ksq,idx(6,r),Moves.CASTLE_K);
+                    }
+                    if(canQ && (occAll & (0x0EL<<(8*r)))==0 && (rooks & (1L<<idx(0,r)))!=0
+                            && !isSquareAttacked(idx(3,r),opp) && !isSquareAttacked(idx(2,r),opp)){
+                        list[n++]=Moves.make(ksq,idx(2,r),Moves.CASTLE_Q);
                     }
                 }
             }
-            return false;
+            return n;
         }
 
-        List<Move> legalMoves(){
-            List<Move> pm = pseudoMoves();
-            List<Move> res = new ArrayList<>();
+        private static long pinLine(long pinned,int ksq,int from){
+            return (pinned & (1L<<from))!=0 ? Bitboards.LINE[ksq][from] : ~0L;
+        }
+
+        // en passant nimmt zwei Figuren von einer Reihe: Abzugsschach über die Belegung danach prüfen
+        private boolean enPassantLegal(int from,int ksq,Side opp){
+            int capSq = enPassant + (sideToMove==Side.WHITE ? -8 : 8);
+            long capBit=1L<<capSq;
+            long occAfter=(occAll ^ (1L<<from) ^ capBit) | (1L<<enPassant);
+            return (attackersTo(ksq,opp,occAfter) & ~capBit)==0;
+        }
+
+        // Referenz: Pseudozüge erzeugen und per make/unmake filtern (Stellungen ohne König, Perft-Abgleich)
+        List<Move> legalMovesByFilter(){
+            int[] buf=new int[Moves.MAX_MOVES];
+            return Moves.toList(buf, filterLegal(buf));
+        }
+
+        // Pseudozüge in buf erzeugen und die legalen nach vorn verdichten
+        private int filterLegal(int[] buf){
+            int n=pseudoMoves(buf), k=0;
             Side me=sideToMove;
-            for(Move m: pm){
-                Board nb = makeMove(m);
-                if(!nb.isInCheck(me)) res.add(m);
+            for(int i=0;i<n;i++){
+                UndoInfo u = make(buf[i]);
+                if(!isInCheck(me)) buf[k++]=buf[i];
+                unmake(u);
             }
-            return res;
+            return k;
         }
 
-        private void addPromotions(List<Move> list,int from,int to,boolean capture){
-            list.add(new Move(from,to,PieceType.QUEEN,false,false,false,capture));
-            list.add(new Move(from,to,PieceType.ROOK, false,false,false,capture));
-            list.add(new Move(from,to,PieceType.BISHOP,false,false,false,capture));
-            list.add(new Move(from,to,PieceType.KNIGHT,false,false,false,capture));
+        private static int addPromotions(int[] list,int n,int from,int to,boolean capture){
+            list[n++]=Moves.promotion(from,to,PieceType.QUEEN,capture);
+            list[n++]=Moves.promotion(from,to,PieceType.ROOK,capture);
+            list[n++]=Moves.promotion(from,to,PieceType.BISHOP,capture);
+            list[n++]=Moves.promotion(from,to,PieceType.KNIGHT,capture);
+            return n;
         }
 
-        List<Move> pseudoMoves(){
-            List<Move> list=new ArrayList<>();
+        private static int addTargets(int[] list,int n,int from,long targets,long enemy){
+            for(; targets!=0; targets&=targets-1){
+                int j=Long.numberOfTrailingZeros(targets);
+                list[n++]=Moves.make(from,j,(enemy & (1L<<j))!=0 ? Moves.CAPTURE : 0);
+            }
+            return n;
+        }
+
+        /** Pseudo-legal moves (own king may be left in check) as packed ints into {@code list}; returns their number. */
+        int pseudoMoves(int[] list){
+            int n=0;
             Side me=sideToMove, opp=me.opposite();
-            for(int i=0;i<64;i++){
-                Piece p=sq[i]; if(p==null||p.side!=me) continue;
-                int x=file(i), y=rank(i);
-                switch(p.type){
-                    case PAWN -> {
-                        int dir=(me==Side.WHITE)?1:-1;
-                        int startRank=(me==Side.WHITE)?1:6;
-                        int promoteRank=(me==Side.WHITE)?6:1;
-                        int ny=y+dir;
-                        if(in(x,ny) && at(idx(x,ny))==null){
-                            if(y==promoteRank) addPromotions(list,i,idx(x,ny),false);
-                            else list.add(new Move(i,idx(x,ny)));
-                            if(y==startRank){
-                                int ny2=y+2*dir;
-                                if(at(idx(x,ny2))==null) list.add(new Move(i,idx(x,ny2)));
-                            }
-                        }
-                        for(int dx: new int[]{-1,1}){
-                            int nx=x+dx; if(!in(nx,ny)) continue;
-                            int j=idx(nx,ny);
-                            if(at(j)!=null && at(j).side==opp){
-                                if(y==promoteRank) addPromotions(list,i,j,true);
-                                else list.add(new Move(i,j,null,false,false,false,true));
-                            }
-                        }
-                        if(enPassant!=-1){
-                            int ex=file(enPassant), ey=rank(enPassant);
-                            if(ey==y+dir && Math.abs(ex-x)==1) list.add(new Move(i,enPassant,null,false,false,true,true));
-                        }
+            int base=me.ordinal()*6;
+            long own=occ[me.ordinal()], enemy=occ[opp.ordinal()], empty=~occAll;
+
+            int dir=(me==Side.WHITE)?8:-8;
+            int startRank=(me==Side.WHITE)?1:6;
+            int promoteRank=(me==Side.WHITE)?6:1;
+            for(long pawns=bb[base+Bitboards.PAWN]; pawns!=0; pawns&=pawns-1){
+                int i=Long.numberOfTrailingZeros(pawns);
+                int y=rank(i), to=i+dir;
+                if(to>=0 && to<64 && (empty & (1L<<to))!=0){
+                    if(y==promoteRank) n=addPromotions(list,n,i,to,false);
+                    else list[n++]=Moves.make(i,to);
+                    if(y==startRank && (empty & (1L<<(to+dir)))!=0) list[n++]=Moves.make(i,to+dir);
+                }
+                long att=Bitboards.pawnAttacks(me,i);
+                for(long caps=att&enemy; caps!=0; caps&=caps-1){
+                    int j=Long.numberOfTrailingZeros(caps);
+                    if(y==promoteRank) n=addPromotions(list,n,i,j,true);
+                    else list[n++]=Moves.make(i,j,Moves.CAPTURE);
+                }
+                if(enPassant!=-1 && (att & (1L<<enPassant))!=0) list[n++]=Moves.make(i,enPassant,Moves.CAPTURE|Moves.EN_PASSANT);
+            }
+            for(long s=bb[base+Bitboards.KNIGHT]; s!=0; s&=s-1){
+                int i=Long.numberOfTrailingZeros(s);
+                n=addTargets(list,n,i,Bitboards.knightAttacks(i)&~own,enemy);
+            }
+            for(long s=bb[base+Bitboards.BISHOP]; s!=0; s&=s-1){
+                int i=Long.numberOfTrailingZeros(s);
+                n=addTargets(list,n,i,Bitboards.bishopAttacks(i,occAll)&~own,enemy);
+            }
+            for(long s=bb[base+Bitboards.ROOK]; s!=0; s&=s-1){
+                int i=Long.numberOfTrailingZeros(s);
+                n=addTargets(list,n,i,Bitboards.rookAttacks(i,occAll)&~own,enemy);
+            }
+            for(long s=bb[base+Bitboards.QUEEN]; s!=0; s&=s-1){
+                int i=Long.numberOfTrailingZeros(s);
+                n=addTargets(list,n,i,Bitboards.queenAttacks(i,occAll)&~own,enemy);
+            }
+            long king=bb[base+Bitboards.KING];
+            if(king!=0){
+                int i=Long.numberOfTrailingZeros(king);
+                n=addTargets(list,n,i,Bitboards.kingAttacks(i)&~own,enemy);
+                // Rochade
+                long rooks=bb[base+Bitboards.ROOK];
+                if(me==Side.WHITE && i==idx(4,0)){
+                    if(wCastleK && (occAll & 0x60L)==0 && (rooks & (1L<<idx(7,0)))!=0
+                            && !isSquareAttacked(idx(4,0),opp) && !isSquareAttacked(idx(5,0),opp) && !isSquareAttacked(idx(6,0),opp)){
+                        list[n++]=Moves.make(i,idx(6,0),Moves.CASTLE_K);
                     }
-                    case KNIGHT -> {
-                        int[][] N={{1,2},{2,1},{2,-1},{1,-2},{-1,-2},{-2,-1},{-2,1},{-1,2}};
-                        for(int[] d:N){
-                            int nx=x+d[0], ny=y+d[1]; if(!in(nx,ny)) continue;
-                            int j=idx(nx,ny);
-                            if(at(j)==null) list.add(new Move(i,j));
-                            else if(at(j).side==opp) list.add(new Move(i,j,null,false,false,false,true));
-                        }
+                    if(wCastleQ && (occAll & 0x0EL)==0 && (rooks & (1L<<idx(0,0)))!=0
+                            && !isSquareAttacked(idx(4,0),opp) && !isSquareAttacked(idx(3,0),opp) && !isSquareAttacked(idx(2,0),opp)){
+                        list[n++]=Moves.make(i,idx(2,0),Moves.CASTLE_Q);
                     }
-                    case BISHOP,ROOK,QUEEN -> {
-                        int[][] dirs = switch(p.type){
-                            case BISHOP -> new int[][]{{1,1},{1,-1},{-1,1},{-1,-1}};
-                            case ROOK   -> new int[][]{{1,0},{-1,0},{0,1},{0,-1}};
-                            default     -> new int[][]{{1,1},{1,-1},{-1,1},{-1,-1},{1,0},{-1,0},{0,1},{0,-1}};
-                        };
-                        for(int[] d:dirs){
-                            int nx=x+d[0], ny=y+d[1];
-                            while(in(nx,ny)){
-                                int j=idx(nx,ny);
-                                if(at(j)==null) list.add(new Move(i,j));
-                                else { if(at(j).side==opp) list.add(new Move(i,j,null,false,false,false,true)); break; }
-                                nx+=d[0]; ny+=d[1];
-                            }
-                        }
+                } else if(me==Side.BLACK && i==idx(4,7)){
+                    if(bCastleK && (occAll & (0x60L<<56))==0 && (rooks & (1L<<idx(7,7)))!=0
+                            && !isSquareAttacked(idx(4,7),opp) && !isSquareAttacked(idx(5,7),opp) && !isSquareAttacked(idx(6,7),opp)){
+                        list[n++]=Moves.make(i,idx(6,7),Moves.CASTLE_K);
                     }
-                    case KING -> {
-                        for(int dx=-1;dx<=1;dx++) for(int dy=-1;dy<=1;dy++){
-                            if(dx==0&&dy==0) continue;
-                            int nx=x+dx, ny=y+dy; if(!in(nx,ny)) continue;
-                            int j=idx(nx,ny);
-                            if(at(j)==null) list.add(new Move(i,j));
-                            else if(at(j).side==opp) list.add(new Move(i,j,null,false,false,false,true));
-                        }
-                        // Rochade
-                        if(me==Side.WHITE && i==idx(4,0)){
-                            if(wCastleK && at(idx(5,0))==null && at(idx(6,0))==null
-                                    && !isSquareAttacked(idx(4,0),opp) && !isSquareAttacked(idx(5,0),opp) && !isSquareAttacked(idx(6,0),opp)
-                                    && at(idx(7,0))!=null && at(idx(7,0)).type==PieceType.ROOK && at(idx(7,0)).side==Side.WHITE){
-                                list.add(new Move(i,idx(6,0),null,true,false,false,false));
-                            }
-                            if(wCastleQ && at(idx(3,0))==null && at(idx(2,0))==null && at(idx(1,0))==null
-                                    && !isSquareAttacked(idx(4,0),opp) && !isSquareAttacked(idx(3,0),opp) && !isSquareAttacked(idx(2,0),opp)
-                                    && at(idx(0,0))!=null && at(idx(0,0)).type==PieceType.ROOK && at(idx(0,0)).side==Side.WHITE){
-                                list.add(new Move(i,idx(2,0),null,false,true,false,false));
-                            }
-                        } else if(me==Side.BLACK && i==idx(4,7)){
-                            if(bCastleK && at(idx(5,7))==null && at(idx(6,7))==null
-                                    && !isSquareAttacked(idx(4,7),opp) && !isSquareAttacked(idx(5,7),opp) && !isSquareAttacked(idx(6,7),opp)
-                                    && at(idx(7,7))!=null && at(idx(7,7)).type==PieceType.ROOK && at(idx(7,7)).side==Side.BLACK){
-                                list.add(new Move(i,idx(6,7),null,true,false,false,false));
-                            }
-                            if(bCastleQ && at(idx(3,7))==null && at(idx(2,7))==null && at(idx(1,7))==null
-                                    && !isSquareAttacked(idx(4,7),opp) && !isSquareAttacked(idx(3,7),opp) && !isSquareAttacked(idx(2,7),opp)
-                                    && at(idx(0,7))!=null && at(idx(0,7)).type==PieceType.ROOK && at(idx(0,7)).side==Side.BLACK){
-                                list.add(new Move(i,idx(2,7),null,false,true,false,false));
-                            }
-                        }
+                    if(bCastleQ && (occAll & (0x0EL<<56))==0 && (rooks & (1L<<idx(0,7)))!=0
+                            && !isSquareAttacked(idx(4,7),opp) && !isSquareAttacked(idx(3,7),opp) && !isSquareAttacked(idx(2,7),opp)){
+                        list[n++]=Moves.make(i,idx(2,7),Moves.CASTLE_Q);
                     }
                 }
             }
-            return list;
+            return n;
         }
 
+        // Unveränderliche Variante für die GUI-Historie: Kopie + make
         Board makeMove(Move m){
             Board b=this.copy();
-            b.enPassant=-1;
-            Piece mover=b.sq[m.from];
-            Piece captured=b.sq[m.to];
+            b.apply(Moves.of(m), null);
+            return b;
+        }
+
+        /**
+         * Führt den Zug auf diesem Brett aus (ohne Kopie). Der Rückgabewert liegt im
+         * vorallokierten Undo-Stack und ist nur bis zum passenden {@link #unmake} gültig.
+         */
+        UndoInfo make(Move m){ return make(Moves.of(m)); }
+
+        /** Wie {@link #make(Move)}, für gepackte Züge ({@link Moves}). */
+        UndoInfo make(int m){
+            if(undoStack==null || undoTop==undoStack.length) growUndoStack();
+            UndoInfo u=undoStack[undoTop++];
+            apply(m, u);
+            return u;
+        }
+
+        /** Nimmt den zuletzt mit {@link #make} ausgeführten Zug zurück. */
+        void unmake(UndoInfo u){
+            int m=u.move;
+            sideToMove=sideToMove.opposite();
+            if(sideToMove==Side.BLACK) fullmoveNumber--;
+            if(Moves.isCastle(m)){
+                boolean kSide=(m & Moves.CASTLE_K)!=0;
+                int r=(sideToMove==Side.WHITE)?0:7;
+                set(idx(kSide?6:2,r),null);
+                set(idx(kSide?5:3,r),null);
+                set(idx(4,r),u.moved);
+                set(idx(kSide?7:0,r),Piece.of(PieceType.ROOK,sideToMove));
+            } else {
+                set(Moves.to(m),null);
+                set(Moves.from(m),u.moved);
+                if(u.captured!=null) set(u.capturedSq,u.captured);
+            }
+            enPassant=u.enPassant;
+            wCastleK=u.wCastleK; wCastleQ=u.wCastleQ; bCastleK=u.bCastleK; bCastleQ=u.bCastleQ;
+            halfmoveClock=u.halfmoveClock;
+            key=u.key;
+            undoTop--;
+            historyLen--;
+        }
+
+        /**
+         * Nullzug für die Suche: nur Seitenwechsel, ein e.p.-Recht verfällt.
+         * Zurücknehmen mit {@link #unmakeNull}.
+         */
+        UndoInfo makeNull(){
+            if(undoStack==null || undoTop==undoStack.length) growUndoStack();
+            UndoInfo u=undoStack[undoTop++];
+            u.move=0; u.enPassant=enPassant; u.halfmoveClock=halfmoveClock; u.key=key;
+            pushKey();
+            if(enPassant!=-1) key^=Zobrist.EP_FILE[file(enPassant)];
+            enPassant=-1;
+            halfmoveClock=0; // Wiederholungen über einen Nullzug hinweg zählen nicht
+            key^=Zobrist.SIDE;
+            sideToMove=sideToMove.opposite();
+            return u;
+        }
+
+        void unmakeNull(UndoInfo u){
+            sideToMove=sideToMove.opposite();
+            enPassant=u.enPassant; halfmoveClock=u.halfmoveClock; key=u.key;
+            undoTop--;
+            historyLen--;
+        }
+
+        private void pushKey(){
+            if(keyHistory==null) keyHistory=new long[2*MAX_PLY];
+            else if(historyLen==keyHistory.length) keyHistory=Arrays.copyOf(keyHistory, historyLen*2);
+            keyHistory[historyLen++]=key;
+        }
+
+        /**
+         * Stellungswiederholung: Vorgänger werden nur bis zum letzten irreversiblen Zug
+         * (halfmoveClock) und nur mit gleicher Seite am Zug verglichen. Liegt das frühere Vorkommen
+         * nach der Wurzel der Suche ({@code ply} Halbzüge zurück), genügt eines, sonst sind zwei nötig.
+         */
+        boolean isRepetition(int ply){
+            int end=Math.min(halfmoveClock, historyLen), count=0;
+            for(int i=4;i<=end;i+=2){
+                if(keyHistory[historyLen-i]==key && (i<ply || ++count==2)) return true;
+            }
+            return false;
+        }
+
+        /** Dritte Wiederholung dieser Stellung in der Partie (Remis nach FIDE 9.2). */
+        boolean isThreefoldRepetition(){ return isRepetition(0); }
+
+        /** 50-Züge-Regel: 100 Halbzüge ohne Bauernzug oder Schlag (Matt im letzten Zug geht vor). */
+        boolean isFiftyMoveDraw(){ return halfmoveClock>=100; }
+
+        private void growUndoStack(){
+            int n = undoStack==null ? 0 : undoStack.length;
+            undoStack = undoStack==null ? new UndoInfo[MAX_PLY] : Arrays.copyOf(undoStack, n*2);
+            for(int i=n;i<undoStack.length;i++) undoStack[i]=new UndoInfo();
+        }
+
+        // gemeinsamer Kern von makeMove und make; u==null => nichts protokollieren
+        private void apply(int m, UndoInfo u){
+            int from=Moves.from(m), to=Moves.to(m);
+            boolean castleK=(m & Moves.CASTLE_K)!=0, castleQ=(m & Moves.CASTLE_Q)!=0;
+            Piece mover=sq[from];
+            int capSq = Moves.isEnPassant(m) ? (mover.side==Side.WHITE ? to-8 : to+8) : to;
+            Piece captured = (castleK||castleQ) ? null : sq[capSq];
+            pushKey();
+            if(u!=null){
+                u.move=m; u.moved=mover; u.captured=captured; u.capturedSq=capSq;
+                u.enPassant=enPassant; u.halfmoveClock=halfmoveClock; u.key=key;
+                u.wCastleK=wCastleK; u.wCastleQ=wCastleQ; u.bCastleK=bCastleK; u.bCastleQ=bCastleQ;
+            }
+            // alte Rochaderechte/e.p.-Linie austragen, unten die neuen wieder eintragen
+            key^=Zobrist.CASTLE[castleMask()];
+            if(enPassant!=-1) key^=Zobrist.EP_FILE[file(enPassant)];
+            enPassant=-1;
 
             boolean isPawnMove=(mover.type==PieceType.PAWN);
-            boolean isAnyCapture = m.isCapture || captured!=null;
-            b.halfmoveClock = (isPawnMove || isAnyCapture) ? 0 : (b.halfmoveClock+1);
-
-            if(m.castleK||m.castleQ){
-                if(mover.side==Side.WHITE){
-                    b.sq[idx(4,0)]=null;
-                    if(m.castleK){
-                        b.sq[idx(6,0)]=new Piece(PieceType.KING,Side.WHITE);
-                        b.sq[idx(7,0)]=null; b.sq[idx(5,0)]=new Piece(PieceType.ROOK,Side.WHITE);
-                    } else {
-                        b.sq[idx(2,0)]=new Piece(PieceType.KING,Side.WHITE);
-                        b.sq[idx(0,0)]=null; b.sq[idx(3,0)]=new Piece(PieceType.ROOK,Side.WHITE);
-                    }
-                    b.wCastleK=b.wCastleQ=false;
+            boolean isAnyCapture = Moves.isCapture(m) || captured!=null;
+            halfmoveClock = (isPawnMove || isAnyCapture) ? 0 : (halfmoveClock+1);
+
+            if(castleK||castleQ){
+                int r=(mover.side==Side.WHITE)?0:7;
+                set(idx(4,r),null);
+                if(castleK){
+                    set(idx(6,r),mover);
+                    set(idx(7,r),null); set(idx(5,r),Piece.of(PieceType.ROOK,mover.side));
                 } else {
-                    b.sq[idx(4,7)]=null;
-                    if(m.castleK){
-                        b.sq[idx(6,7)]=new Piece(PieceType.KING,Side.BLACK);
-                        b.sq[idx(7,7)]=null; b.sq[idx(5,7)]=new Piece(PieceType.ROOK,Side.BLACK);
-                    } else {
-                        b.sq[idx(2,7)]=new Piece(PieceType.KING,Side.BLACK);
-                        b.sq[idx(0,7)]=null; b.sq[idx(3,7)]=new Piece(PieceType.ROOK,Side.BLACK);
-                    }
-                    b.bCastleK=b.bCastleQ=false;
+                    set(idx(2,r),mover);
+                    set(idx(0,r),null); set(idx(3,r),Piece.of(PieceType.ROOK,mover.side));
                 }
-            } else if(m.enPassant){
-                b.sq[m.from]=null; b.sq[m.to]=mover;
-                if(mover.side==Side.WHITE) b.sq[m.to-8]=null; else b.sq[m.to+8]=null;
+                if(mover.side==Side.WHITE) wCastleK=wCastleQ=false; else bCastleK=bCastleQ=false;
             } else {
-                b.sq[m.from]=null; b.sq[m.to]=mover;
-                if(m.isPromotion()) b.sq[m.to]=new Piece(m.promotion, mover.side);
+                if(captured!=null) set(capSq,null);
+                set(from,null);
+                set(to, Moves.isPromotion(m) ? Piece.of(Moves.promo(m), mover.side) : mover);
             }
 
-            if(!m.castleK && !m.castleQ && mover.type==PieceType.PAWN){
-                int fr=rank(m.from), tr=rank(m.to);
-                if(Math.abs(tr-fr)==2) b.enPassant=(mover.side==Side.WHITE)?(m.from+8):(m.from-8);
+            if(!castleK && !castleQ && isPawnMove){
+                int fr=rank(from), tr=rank(to);
+                if(Math.abs(tr-fr)==2){
+                    int ep=(mover.side==Side.WHITE)?(from+8):(from-8);
+                    if(epCapturable(ep, mover.side)) enPassant=ep;
+                }
             }
 
-            if(mover.type==PieceType.KING){ if(mover.side==Side.WHITE){ b.wCastleK=b.wCastleQ=false; } else { b.bCastleK=b.bCastleQ=false; } }
+            if(mover.type==PieceType.KING){ if(mover.side==Side.WHITE){ wCastleK=wCastleQ=false; } else { bCastleK=bCastleQ=false; } }
             if(mover.type==PieceType.ROOK){
-                if(m.from==idx(0,0)) b.wCastleQ=false;
-                if(m.from==idx(7,0)) b.wCastleK=false;
-                if(m.from==idx(0,7)) b.bCastleQ=false;
-                if(m.from==idx(7,7)) b.bCastleK=false;
+                if(from==idx(0,0)) wCastleQ=false;
+                if(from==idx(7,0)) wCastleK=false;
+                if(from==idx(0,7)) bCastleQ=false;
+                if(from==idx(7,7)) bCastleK=false;
             }
             if(captured!=null && captured.type==PieceType.ROOK){
-                if(m.to==idx(0,0)) b.wCastleQ=false;
-                if(m.to==idx(7,0)) b.wCastleK=false;
-                if(m.to==idx(0,7)) b.bCastleQ=false;
-                if(m.to==idx(7,7)) b.bCastleK=false;
+                if(to==idx(0,0)) wCastleQ=false;
+                if(to==idx(7,0)) wCastleK=false;
+                if(to==idx(0,7)) bCastleQ=false;
+                if(to==idx(7,7)) bCastleK=false;
             }
 
-            if(b.sideToMove==Side.BLACK) b.fullmoveNumber++;
-            b.sideToMove=b.sideToMove.opposite();
-            return b;
+            key^=Zobrist.CASTLE[castleMask()];
+            if(enPassant!=-1) key^=Zobrist.EP_FILE[file(enPassant)];
+            key^=Zobrist.SIDE;
+
+            if(sideToMove==Side.BLACK) fullmoveNumber++;
+            sideToMove=sideToMove.opposite();
         }
     }
 
+    // Zustand, den unmake() zum Zurücknehmen eines Zuges braucht
+    static final class UndoInfo {
+        int move; // gepackt (Moves), 0 beim Nullzug
+        Piece moved, captured;
+        int capturedSq;
+        int enPassant, halfmoveClock;
+        long key;
+        boolean wCastleK, wCastleQ, bCastleK, bCastleQ;
+    }
+
     static final class UCI {
         static String sq(int i){ return ""+(char)('a'+Board.file(i)) + (char)('1'+Board.rank(i)); }
         static String fromTo(int f,int t){ return sq(f)+sq(t); }
@@ -459,6 +849,15 @@ public class ChessGUI {
                 -30,-40,-40,-50,-50,-40,-40,-30, -30,-40,-40,-50,-50,-40,-40,-30, -30,-40,-40,-50,-50,-40,-40,-30,
                 -30,-40,-40,-50,-50,-40,-40,-30, -20,-30,-30,-40,-40,-30,-30,-20, -10,-20,-20,-20,-20,-20,-20,-10,
                 20,20,0,0,0,0,20,20, 20,30,10,0,0,10,30,20 });
+        // Endspiel: König in die Mitte, Bauern nach vorne; die übrigen Figuren wie im Mittelspiel
+        static final int[][] PST_K_EG = mirror(new int[]{
+                -50,-30,-30,-30,-30,-30,-30,-50, -30,-30,0,0,0,0,-30,-30, -30,-10,20,30,30,20,-10,-30,
+                -30,-10,30,40,40,30,-10,-30, -30,-10,30,40,40,30,-10,-30, -30,-10,20,30,30,20,-10,-30,
+                -30,-20,-10,0,0,-10,-20,-30, -50,-40,-30,-20,-20,-30,-40,-50 });
+        static final int[][] PST_P_EG = mirror(new int[]{
+                0,0,0,0,0,0,0,0, 10,10,10,10,10,10,10,10, 10,10,10,10,10,10,10,10,
+                15,15,15,15,15,15,15,15, 25,25,25,25,25,25,25,25, 45,45,45,45,45,45,45,45,
+                80,80,80,80,80,80,80,80, 0,0,0,0,0,0,0,0 });
 
         private static int[][] mirror(int[] base){
             int[] white = Arrays.copyOf(base, 64);
@@ -469,23 +868,123 @@ public class ChessGUI {
         static int val(PieceType t){
             return switch(t){ case PAWN->100; case KNIGHT->320; case BISHOP->330; case ROOK->500; case QUEEN->900; case KING->0; };
         }
-        static int evaluate(Board b){
+        // Indiziert nach PieceType.ordinal() bzw. Bitboards-Index
+        private static final int[][][] PST = {PST_K, PST_Q, PST_R, PST_B, PST_N, PST_P};
+        private static final int[][][] PST_EG = {PST_K_EG, PST_Q, PST_R, PST_B, PST_N, PST_P_EG};
+        private static final int[] VAL = {0, 900, 500, 330, 320, 100};
+        private static final int[] VAL_EG = {0, 920, 520, 330, 310, 120};
+
+        // Mittel- und Endspielwert in einem int: Summen beider Teile kosten eine Addition
+        static int pack(int mg, int eg){ return (eg << 16) + mg; }
+        static int mg(int s){ return (short)s; }
+        static int eg(int s){ return (short)((s + 0x8000) >> 16); }
+
+        // Material + PST je Bitboard-Index und Feld (gepackt), für Schwarz negativ; Board.set summiert daraus Board.psqt
+        static final int[][] PSQ = new int[12][64];
+        static {
+            for(int k=0;k<12;k++) for(int i=0;i<64;i++){
+                int t=k%6, side=k/6;
+                int v=pack(VAL[t]+PST[t][side][i], VAL_EG[t]+PST_EG[t][side][i]);
+                PSQ[k][i] = side==0 ? v : -v;
+            }
+        }
+
+        // Spielphase aus dem Figurenmaterial ohne Bauern: 24 = volle Besetzung (Mittelspiel), 0 = nur Könige und Bauern
+        static final int PHASE_MAX = 24;
+        static int phase(Board b){
+            long minors=b.bb[Bitboards.KNIGHT]|b.bb[Bitboards.BISHOP]|b.bb[6+Bitboards.KNIGHT]|b.bb[6+Bitboards.BISHOP];
+            int p = Long.bitCount(minors) + 2*Long.bitCount(b.bb[Bitboards.ROOK]|b.bb[6+Bitboards.ROOK])
+                  + 4*Long.bitCount(b.bb[Bitboards.QUEEN]|b.bb[6+Bitboards.QUEEN]);
+            return Math.min(p, PHASE_MAX);
+        }
+
+        // -Dchess.evalDebug=true: inkrementelles psqt bei jeder Bewertung gegen die Neuberechnung prüfen
+        static final boolean DEBUG = Boolean.getBoolean("chess.evalDebug");
+
+        /** Material + PST (gepackt) komplett neu berechnet (Referenz für {@link Board#psqt}). */
+        static int computePsqt(Board b){
             int score=0;
-            for(int i=0;i<64;i++){
-                Piece p=b.sq[i]; if(p==null) continue;
-                int pst = switch(p.type){
-                    case PAWN->PST_P[p.side==Side.WHITE?0:1][i];
-                    case KNIGHT->PST_N[p.side==Side.WHITE?0:1][i];
-                    case BISHOP->PST_B[p.side==Side.WHITE?0:1][i];
-                    case ROOK->PST_R[p.side==Side.WHITE?0:1][i];
-                    case QUEEN->PST_Q[p.side==Side.WHITE?0:1][i];
-                    case KING->PST_K[p.side==Side.WHITE?0:1][i];
-                };
-                int s = val(p.type)+pst;
-                score += (p.side==Side.WHITE)? s : -s;
+            for(int k=0;k<12;k++) for(long pcs=b.bb[k]; pcs!=0; pcs&=pcs-1) score += PSQ[k][Long.numberOfTrailingZeros(pcs)];
+            return score;
+        }
+
+        static int evaluate(Board b){ return evaluate(b, null); }
+
+        /** Bewertung aus Sicht von Weiß; {@code pawns} cacht die Bauernstruktur (null = direkt berechnen). */
+        static int evaluate(Board b, PawnTable pawns){
+            int ps=b.psqt;
+            if(DEBUG && ps!=computePsqt(b)) throw new IllegalStateException("psqt weicht ab ("+ps+" statt "+computePsqt(b)+"): "+b.toFEN());
+            int phase=phase(b);
+            int score=(mg(ps)*phase + eg(ps)*(PHASE_MAX-phase)) / PHASE_MAX;
+            score += pawns==null ? pawnStructure(b) : pawns.probe(b);
+            return score + mobility(b, Side.WHITE) - mobility(b, Side.BLACK);
+        }
+
+        // Bauernstruktur (cp): Doppel-, isolierte und rückständige Bauern, Freibauern nach relativer Reihe
+        private static final int DOUBLED = 10, ISOLATED = 15, BACKWARD = 8;
+        private static final int[] PASSED = {0, 5, 10, 20, 35, 60, 100, 0};
+        // ADJ_FILES[f]: Nachbarlinien; FRONT[side][sq]: Felder vor sq auf derselben und den Nachbarlinien
+        private static final long[] ADJ_FILES = new long[8];
+        private static final long[][] FRONT = new long[2][64];
+        private static final long[][] AHEAD_RANKS = new long[2][8]; // Reihen echt vor r aus Sicht der Seite
+        static {
+            for(int f=0;f<8;f++) ADJ_FILES[f] = (f>0 ? Bitboards.FILE_A<<(f-1) : 0) | (f<7 ? Bitboards.FILE_A<<(f+1) : 0);
+            for(int r=0;r<8;r++){
+                AHEAD_RANKS[0][r] = r==7 ? 0 : -1L << (8*(r+1));
+                AHEAD_RANKS[1][r] = (1L << (8*r)) - 1;
+            }
+            for(int s=0;s<2;s++) for(int i=0;i<64;i++){
+                int f=Board.file(i);
+                FRONT[s][i] = ((Bitboards.FILE_A<<f) | ADJ_FILES[f]) & AHEAD_RANKS[s][Board.rank(i)];
             }
-            int mob = b.legalMoves().size();
-            score += (b.sideToMove==Side.WHITE?1:-1) * (mob/3);
+        }
+
+        /** Bauernstruktur aus Sicht von Weiß, hängt nur von den Bauern ab (siehe {@link PawnTable}). */
+        static int pawnStructure(Board b){ return pawnScore(b, 0) - pawnScore(b, 1); }
+
+        private static int pawnScore(Board b, int s){
+            long own=b.bb[s*6+Bitboards.PAWN], opp=b.bb[(1-s)*6+Bitboards.PAWN];
+            int score=0;
+            for(long p=own; p!=0; p&=p-1){
+                int i=Long.numberOfTrailingZeros(p), f=Board.file(i), r=Board.rank(i);
+                int rel = s==0 ? r : 7-r;
+                if(Long.bitCount(own & (Bitboards.FILE_A<<f))>1) score-=DOUBLED;
+                if((own & ADJ_FILES[f])==0) score-=ISOLATED;
+                // rückständig: kein Nachbarbauer auf gleicher Höhe oder dahinter, Stoppfeld von Bauern bewacht
+                else if((own & ADJ_FILES[f] & ~AHEAD_RANKS[s][r])==0 && rel<6){
+                    int stop = s==0 ? i+8 : i-8;
+                    if((Bitboards.PAWN_ATTACKS[s][stop] & opp)!=0) score-=BACKWARD;
+                }
+                if((opp & FRONT[s][i])==0 && (own & (Bitboards.FILE_A<<f) & AHEAD_RANKS[s][r])==0) score+=PASSED[rel];
+            }
+            return score;
+        }
+
+        // cp je erreichbarem Feld (Index wie Bitboards: K, Q, R, B, N, P) und Feldanzahl, ab der es Bonus gibt
+        private static final int[] MOB_WEIGHT = {0, 1, 2, 4, 4, 0};
+        private static final int[] MOB_BASE = {0, 13, 7, 6, 4, 0};
+
+        /**
+         * Pseudo-legale Mobilität aus den Angriffstabellen: Felder ohne eigene Figuren und
+         * ohne Angriff gegnerischer Bauern, je Figurtyp gewichtet. Kein Zuggenerator, keine Brettkopie.
+         */
+        static int mobility(Board b, Side s){
+            int o=s.ordinal()*6, them=1-s.ordinal();
+            long theirPawns=b.bb[them*6+Bitboards.PAWN];
+            long pawnAtt = s==Side.WHITE
+                    ? ((theirPawns >>> 7) & Bitboards.NOT_A) | ((theirPawns >>> 9) & Bitboards.NOT_H)
+                    : ((theirPawns << 9) & Bitboards.NOT_A) | ((theirPawns << 7) & Bitboards.NOT_H);
+            long area = ~b.occ[s.ordinal()] & ~pawnAtt;
+            long occ = b.occAll;
+            int score=0;
+            for(long p=b.bb[o+Bitboards.KNIGHT]; p!=0; p&=p-1)
+                score += MOB_WEIGHT[Bitboards.KNIGHT]*(Long.bitCount(Bitboards.knightAttacks(Long.numberOfTrailingZeros(p)) & area) - MOB_BASE[Bitboards.KNIGHT]);
+            for(long p=b.bb[o+Bitboards.BISHOP]; p!=0; p&=p-1)
+                score += MOB_WEIGHT[Bitboards.BISHOP]*(Long.bitCount(Bitboards.bishopAttacks(Long.numberOfTrailingZeros(p), occ) & area) - MOB_BASE[Bitboards.BISHOP]);
+            for(long p=b.bb[o+Bitboards.ROOK]; p!=0; p&=p-1)
+                score += MOB_WEIGHT[Bitboards.ROOK]*(Long.bitCount(Bitboards.rookAttacks(Long.numberOfTrailingZeros(p), occ) & area) - MOB_BASE[Bitboards.ROOK]);
+            for(long p=b.bb[o+Bitboards.QUEEN]; p!=0; p&=p-1)
+                score += MOB_WEIGHT[Bitboards.QUEEN]*(Long.bitCount(Bitboards.queenAttacks(Long.numberOfTrailingZeros(p), occ) & area) - MOB_BASE[Bitboards.QUEEN]);
             return score;
         }
     }
@@ -493,105 +992,711 @@ public class ChessGUI {
     static final class AI {
         static final int MATE = 1_000_000;
         private int maxDepth;
-        AI(int d){ maxDepth=Math.max(1,d); }
+        // null = ohne Transpositionstabelle (ttMb 0)
+        private final TranspositionTable tt;
+        long nodes; // Knoten der letzten Suche
+        int lastDepth, lastScore; // zuletzt vollständig abgeschlossene Iteration
+        List<Move> lastPv = List.of(); // Hauptvariante dieser Iteration
+
+        // Zeitkontrolle: Abbruch, sobald deadline überschritten oder stop() aufgerufen wurde
+        private long deadline = Long.MAX_VALUE;
+        private volatile boolean stopRequested;
+        private boolean stopped;
+
+        // Zugsortierung: Killer-Züge (2 je Ply, als TT-Zugcode), Butterfly-History [Seite][von][nach], Score-Puffer je Ply
+        private final int[][] killers = new int[Board.MAX_PLY][2];
+        private final int[] history = new int[2*64*64];
+        private final int[][] orderScores = new int[Board.MAX_PLY][Moves.MAX_MOVES];
+        // Zugpuffer je Ply (gepackte Züge), damit die Suche keine Zuglisten allokiert
+        private final int[][] moveBuf = new int[Board.MAX_PLY][Moves.MAX_MOVES];
+
+        // Dreieckige PV-Tabelle: pvTable[ply][ply..pvLength[ply]-1] = beste Fortsetzung ab ply (gepackt)
+        private final int[][] pvTable = new int[Board.MAX_PLY][Board.MAX_PLY];
+        private final int[] pvLength = new int[Board.MAX_PLY];
+
+        // Bauernstruktur-Cache, je Suchthread eigener (Trefferquote der letzten Suche über hits/misses)
+        final PawnTable pawns = new PawnTable();
+
+        // optionales NNUE statt Eval; die Helfer bekommen den Akkumulator mit der Brettkopie
+        private Nnue nnue;
+        Nnue getNnue(){ return nnue; }
+        void setNnue(Nnue net){ nnue=net; }
+
+        // optionales Eröffnungsbuch: Buchzug statt Suche (gewichtet zufällig oder der stärkste Eintrag)
+        private PolyglotBook book;
+        private boolean bookWeighted;
+        private final SplittableRandom bookRandom = new SplittableRandom();
+        void setBook(PolyglotBook book, boolean weighted){ this.book=book; bookWeighted=weighted; }
+
+        // Lazy SMP: Helfer durchsuchen dieselbe Wurzel mit eigener Sortierung/History und teilen nur die TT
+        private int threads = 1;
+        private AI[] helpers = new AI[0];
+        private boolean helper;
+        private int depthOffset; // Helfer mit ungerader Nummer suchen eine Tiefe weiter voraus
+
+        /** Schalter für die selektive Suche (zum Messen einzeln abschaltbar); Helfer teilen die Optionen des Hauptthreads. */
+        static final class Options {
+            boolean nullMove=true, lmr=true, reverseFutility=true, futility=true, checkExtensions=true, bitbases=true;
+        }
+        final Options options;
+        private int rootDepth; // begrenzt die Schachverlängerungen auf 2*rootDepth Halbzüge
+
+        AI(int d){ this(d, 16); }
+        AI(int d, int ttMb){
+            maxDepth=Math.max(1,d); tt = ttMb>0 ? new TranspositionTable(ttMb) : null; options=new Options();
+            Bitbases.initAsync(); // nie innerhalb einer Suche mit Zeitlimit erzeugen
+        }
+        private AI(AI main, int id){ maxDepth=main.maxDepth; tt=main.tt; options=main.options; helper=true; depthOffset=id&1; }
         int getDepth(){ return maxDepth; }
         void setDepth(int d){ maxDepth=Math.max(1,d); }
+        int getThreads(){ return threads; }
+        /** Anzahl Suchthreads inkl. Hauptthread (Lazy SMP); 1 = einthreadig. */
+        void setThreads(int n){
+            threads=Math.max(1,n);
+            helpers=new AI[threads-1];
+            for(int i=0;i<helpers.length;i++) helpers[i]=new AI(this, i+1);
+        }
+
+        /** Suchgrenzen wie bei UCI "go": Tiefe, feste Zeit pro Zug oder Restzeit + Inkrement. */
+        static final class Limits {
+            int depth;                   // 0 = nur durch die Zeit begrenzt
+            long movetimeMs;             // feste Zeit pro Zug, 0 = keine
+            long wtimeMs, btimeMs, wincMs, bincMs;
+            int movesToGo;               // 0 = unbekannt
+            static Limits depth(int d){ Limits l=new Limits(); l.depth=d; return l; }
+            static Limits movetime(long ms){ Limits l=new Limits(); l.movetimeMs=ms; return l; }
+            static Limits clock(long wtime,long btime,long winc,long binc){
+                Limits l=new Limits(); l.wtimeMs=wtime; l.btimeMs=btime; l.wincMs=winc; l.bincMs=binc; return l;
+            }
+            // Zeitbudget für diesen Zug in ms, Long.MAX_VALUE = unbegrenzt
+            long budgetMs(Side stm){
+                if(movetimeMs>0) return movetimeMs;
+                long time = stm==Side.WHITE ? wtimeMs : btimeMs, inc = stm==Side.WHITE ? wincMs : bincMs;
+                if(time<=0) return Long.MAX_VALUE;
+                long share = time / (movesToGo>0 ? movesToGo+1 : 30) + inc*3/4;
+                return Math.max(1, Math.min(share, time - 50)); // Sicherheitsabstand gegen Zeitüberschreitung
+            }
+        }
 
-        Move findBestMove(Board b){
+        Move findBestMove(Board b){ return findBestMove(b, Limits.depth(maxDepth)); }
+
+        /**
+         * Iterative Vertiefung bis zur Tiefe bzw. bis die Zeit abläuft. Eine abgebrochene Iteration
+         * wird verworfen; es zählt der beste Zug der letzten vollständigen Iteration.
+         * Mit mehreren Threads laufen Helfer auf Brettkopien mit, bis der Hauptthread fertig ist;
+         * danach stimmen alle Threads nach abgeschlossener Tiefe und Score über den Zug ab.
+         */
+        Move findBestMove(Board b, Limits lim){
+            if(book!=null){
+                Move m=book.pick(b, bookWeighted, bookRandom);
+                if(m!=null){ nodes=0; lastDepth=0; lastScore=0; lastPv=List.of(m); return m; }
+            }
+            boolean attached=attachNnue(b);
+            try {
+                return findBestMoveSmp(b, lim);
+            } finally {
+                if(attached) b.detachNnue();
+            }
+        }
+
+        // Akkumulator nur für die Dauer der Suche anhängen, falls das Brett noch keinen hat
+        private boolean attachNnue(Board b){
+            if(nnue==null || b.nnue!=null) return false;
+            b.attachNnue(nnue);
+            return true;
+        }
+
+        private Move findBestMoveSmp(Board b, Limits lim){
+            if(helpers.length==0) return search(b, lim);
+            Move[] results=new Move[helpers.length];
+            Thread[] workers=new Thread[helpers.length];
+            Limits helperLim=new Limits(); // Helfer laufen ohne eigene Grenzen, bis sie gestoppt werden
+            for(int i=0;i<helpers.length;i++){
+                AI h=helpers[i]; Board hb=b.copy(); int id=i;
+                h.stopRequested=false;
+                workers[i]=new Thread(() -> results[id]=h.search(hb, helperLim), "ai-helper-"+(i+1));
+                workers[i].setDaemon(true);
+                workers[i].start();
+            }
+            Move best;
+            try {
+                best=search(b, lim);
+            } finally {
+                for(AI h: helpers) h.stop();
+                for(Thread t: workers){
+                    try { t.join(); } catch (InterruptedException e){ Thread.currentThread().interrupt(); }
+                }
+            }
+            for(AI h: helpers) nodes+=h.nodes;
+            if(best==null) return null;
+            // Abstimmung: jeder Thread stimmt für seinen Zug mit (Score - schlechtester Score + 14) * Tiefe;
+            // die Tiefe ohne den Versatz der ungeraden Helfer, sonst gewönnen diese jeden Gleichstand
+            int minScore=lastScore;
+            for(int i=0;i<helpers.length;i++) if(results[i]!=null && helpers[i].lastDepth>0) minScore=Math.min(minScore, helpers[i].lastScore);
+            Map<Integer,Long> votes=new HashMap<>();
+            votes.merge(Moves.of(best), vote(lastScore, minScore, lastDepth), Long::sum);
+            for(int i=0;i<helpers.length;i++){
+                AI h=helpers[i];
+                if(results[i]==null || h.lastDepth==0) continue;
+                votes.merge(Moves.of(results[i]), vote(h.lastScore, minScore, h.lastDepth-h.depthOffset), Long::sum);
+            }
+            for(int i=0;i<helpers.length;i++){
+                AI h=helpers[i];
+                if(results[i]==null || h.lastDepth==0) continue;
+                // bei Gleichstand bleibt der Hauptthread
+                if(votes.get(Moves.of(results[i])) > votes.get(Moves.of(best))){
+                    best=results[i]; lastDepth=h.lastDepth; lastScore=h.lastScore; lastPv=h.lastPv;
+                }
+            }
+            return best;
+        }
+
+        private static long vote(int score, int minScore, int depth){ return (long)(score-minScore+14)*Math.max(1, depth); }
+
+        private Move search(Board b, Limits lim){
             List<Move> moves=b.legalMoves();
             if(moves.isEmpty()) return null;
-            moves.sort((a,c)-> Boolean.compare((c.isCapture||c.isPromotion()), (a.isCapture||a.isPromotion())));
-            int bestScore=Integer.MIN_VALUE; Move best=moves.get(0);
-            for(Move m: moves){
-                int s = scoreMove(b, m, maxDepth);
-                if(s>bestScore){ bestScore=s; best=m; }
+            // Bitbasen entstehen im Hintergrund (Konstruktor); bis sie fertig sind, liefern die Abfragen UNKNOWN
+            if(options.bitbases && Bitbases.ready() && Long.bitCount(b.occAll)<=3) bitbaseRoot(b, moves);
+            long start=System.nanoTime(), budget=lim.budgetMs(b.sideToMove);
+            newSearch(budget==Long.MAX_VALUE ? Long.MAX_VALUE : start + budget*1_000_000L);
+            orderAll(b, moves);
+            Move best=moves.get(0);
+            int maxD = lim.depth>0 ? lim.depth : Board.MAX_PLY-1;
+            for(int d=1; d<=maxD; d++){
+                int sd=Math.min(d+depthOffset, Board.MAX_PLY-1);
+                rootDepth=sd;
+                // Aspirationsfenster um den Score der Voriteration, bei fail-low/-high schrittweise weiter
+                int delta=ASPIRATION_WINDOW, alpha=-MATE, beta=MATE;
+                if(d>=4 && Math.abs(lastScore)<MATE_BOUND){ alpha=lastScore-delta; beta=lastScore+delta; }
+                int bestScore;
+                while(true){
+                    bestScore=searchRoot(b, moves, sd, alpha, beta);
+                    if(stopped) break;
+                    if(bestScore<=alpha){ alpha=Math.max(-MATE, bestScore-delta); delta*=2; }
+                    else if(bestScore>=beta){
+                        beta=Math.min(MATE, bestScore+delta); delta*=2;
+                        moves.remove(rootBest); moves.add(0, rootBest);
+                    }
+                    else break;
+                }
+                if(stopped) break;
+                best=rootBest; lastDepth=sd; lastScore=bestScore; lastPv=extendPv(b, rootPv(), sd);
+                // bester Zug der Iteration wird in der nächsten zuerst durchsucht
+                moves.remove(best); moves.add(0, best);
+                if(Math.abs(bestScore)>=MATE-Board.MAX_PLY) break; // Matt gefunden, tiefer bringt nichts
+                // neue Iteration nur, wenn sie voraussichtlich noch in die Zeit passt
+                if(budget!=Long.MAX_VALUE && System.nanoTime()-start > budget*1_000_000L/2) break;
             }
             return best;
         }
+
+        private static final int ASPIRATION_WINDOW = 50;
+        private Move rootBest;
+
+        // Bitbasen-Stellung an der Wurzel: nur Züge behalten, die das bestmögliche Ergebnis halten
+        private static void bitbaseRoot(Board b, List<Move> moves){
+            if(Bitbases.probe(b)==Bitbases.UNKNOWN) return;
+            int[] value=new int[moves.size()];
+            int best=0;
+            for(int i=0;i<moves.size();i++){
+                UndoInfo u=b.make(moves.get(i));
+                int r=Bitbases.probe(b);
+                b.unmake(u);
+                if(r==Bitbases.UNKNOWN) return; // z.B. Unterverwandlung in eine nicht erfasste Stellung
+                value[i] = r==Bitbases.LOSS ? 2 : r==Bitbases.DRAW ? 1 : 0; // aus Sicht der Wurzel
+                best=Math.max(best, value[i]);
+            }
+            List<Move> keep=new ArrayList<>();
+            for(int i=0;i<moves.size();i++) if(value[i]==best) keep.add(moves.get(i));
+            moves.retainAll(keep);
+        }
+
+        // eine Iteration an der Wurzel: erster Zug mit vollem Fenster, die übrigen mit Nullfenster (PVS)
+        private int searchRoot(Board b, List<Move> moves, int depth, int alpha, int beta){
+            pvLength[0]=0;
+            int best=Integer.MIN_VALUE/2;
+            rootBest=null;
+            for(int i=0;i<moves.size();i++){
+                Move m=moves.get(i);
+                UndoInfo u=b.make(m);
+                int s;
+                if(i==0) s = -negamax(b, depth-1, -beta, -alpha, 1, true);
+                else {
+                    s = -negamax(b, depth-1, -alpha-1, -alpha, 1, true);
+                    if(s>alpha && s<beta && !stopped) s = -negamax(b, depth-1, -beta, -alpha, 1, true);
+                }
+                b.unmake(u);
+                if(stopped) return 0;
+                if(s>best){ best=s; rootBest=m; }
+                if(s>alpha){ alpha=s; updatePv(0, Moves.of(m)); }
+                if(alpha>=beta) break;
+            }
+            return best;
+        }
+
+        private void updatePv(int ply, int m){
+            int[] row=pvTable[ply];
+            row[ply]=m;
+            int end = ply+1<Board.MAX_PLY ? pvLength[ply+1] : ply+1;
+            if(end>ply+1) System.arraycopy(pvTable[ply+1], ply+1, row, ply+1, end-ply-1);
+            pvLength[ply]=Math.max(end, ply+1);
+        }
+
+        private List<Move> rootPv(){ return pvFrom(0); }
+
+        // durch TT-Abschneidungen verkürzte Varianten mit den gespeicherten besten Zügen auffüllen
+        private List<Move> extendPv(Board b, List<Move> pv, int minLen){
+            if(tt==null || pv.size()>=minLen) return pv;
+            List<Move> out=new ArrayList<>(pv);
+            Board c=b.copy();
+            for(Move m: pv) c.make(m);
+            while(out.size()<minLen){
+                long e=tt.probe(c.key);
+                int code = e==0 ? 0 : TranspositionTable.move(e);
+                Move next=null;
+                for(Move m: c.legalMoves()) if(TranspositionTable.matches(m, code)){ next=m; break; }
+                if(next==null) break;
+                out.add(next);
+                c.make(next);
+            }
+            return List.copyOf(out);
+        }
+
+        private List<Move> pvFrom(int ply){
+            int n=Math.max(0, pvLength[ply]-ply);
+            return List.copyOf(Moves.toList(Arrays.copyOfRange(pvTable[ply], ply, ply+n), n));
+        }
+
+        /** Bricht eine laufende Suche ab (threadsicher); findBestMove liefert dann den letzten fertigen Zug. */
+        void stop(){
+            stopRequested=true;
+            for(AI h: helpers) h.stopRequested=true;
+        }
+
+        private void newSearch(long deadline){
+            nodes=0; lastDepth=0; lastScore=0;
+            this.deadline=deadline; stopped=false;
+            pawns.resetStats();
+            if(!helper){
+                stopRequested=false; // bei Helfern setzt der Hauptthread das Flag vor dem Start zurück
+                if(tt!=null) tt.newSearch();
+            }
+            for(int[] k: killers){ k[0]=0; k[1]=0; }
+            for(int i=0;i<history.length;i++) history[i]>>=1; // History der letzten Suche gealtert weiterverwenden
+        }
+
+        // erst nach abgeschlossener Tiefe 1 abbrechen, damit immer ein durchsuchter Zug vorliegt (Helfer sofort)
+        private boolean timeUp(){
+            if(lastDepth==0 && !helper) return false;
+            if(stopRequested || ((nodes & 1023)==0 && System.nanoTime()>deadline)) stopped=true;
+            return stopped;
+        }
+        // b wird per make/unmake verändert und danach wiederhergestellt
         int scoreMove(Board b, Move m, int depth){
-            Board nb=b.makeMove(m);
-            return -negamax(nb, depth-1, -MATE, MATE, 1);
+            rootDepth=depth;
+            UndoInfo u=b.make(m);
+            int s = -negamax(b, depth-1, -MATE, MATE, 1, true);
+            b.unmake(u);
+            return s;
         }
+        /**
+         * Alle Wurzelzüge mit exaktem Score und Hauptvariante (beginnend mit dem Zug selbst), bester zuerst.
+         * Jeder Zug wird einzeln mit vollem Fenster gesucht; für die besten K Züge ist
+         * {@link #analyzeRoot(Board,int,int)} mit kleinem K deutlich billiger.
+         */
         List<ScoredMove> analyzeRoot(Board b, int depth){
-            List<ScoredMove> out=new ArrayList<>();
-            for(Move m: b.legalMoves()){
-                int s = scoreMove(b, m, depth);
-                out.add(new ScoredMove(m,s));
+            boolean attached=attachNnue(b);
+            try {
+                newSearch(Long.MAX_VALUE);
+                List<ScoredMove> out=new ArrayList<>();
+                for(Move m: b.legalMoves()){
+                    int s = scoreMove(b, m, depth);
+                    List<Move> pv=new ArrayList<>();
+                    pv.add(m); pv.addAll(pvFrom(1));
+                    out.add(new ScoredMove(m,s,extendPv(b, pv, depth)));
+                }
+                out.sort((x,y)-> Integer.compare(y.score, x.score));
+                return out;
+            } finally {
+                if(attached) b.detachNnue();
+            }
+        }
+
+        /**
+         * MultiPV: die besten {@code multiPv} Wurzelzüge mit Score und Hauptvariante, bester zuerst.
+         * Je Iteration sucht jede Zeile die Wurzel ohne die schon gefundenen Züge, im Aspirationsfenster
+         * der Voriteration und nach oben durch den Score der vorigen Zeile begrenzt. Die TT wird geteilt,
+         * so wachsen die Kosten mit der Zahl der Zeilen statt mit der Zahl der legalen Züge; das lohnt sich
+         * nur für wenige Zeilen, für alle Züge ist {@link #analyzeRoot(Board,int)} billiger. Alle Scores
+         * sind exakt: überschreitet eine Zeile die Grenze, wird mit offenem Fenster nachgesucht.
+         */
+        List<ScoredMove> analyzeRoot(Board b, int depth, int multiPv){
+            boolean attached=attachNnue(b);
+            try {
+                return multiPv(b, depth, multiPv);
+            } finally {
+                if(attached) b.detachNnue();
+            }
+        }
+
+        private List<ScoredMove> multiPv(Board b, int depth, int multiPv){
+            List<Move> moves=b.legalMoves();
+            List<ScoredMove> lines=new ArrayList<>();
+            if(moves.isEmpty()) return lines;
+            newSearch(Long.MAX_VALUE);
+            orderAll(b, moves);
+            int k=Math.min(multiPv, moves.size());
+            for(int d=1; d<=Math.max(1,depth); d++){
+                rootDepth=d;
+                List<ScoredMove> cur=new ArrayList<>();
+                List<Move> remaining=new ArrayList<>(moves);
+                for(int line=0; line<k; line++){
+                    int cap = line>0 ? cur.get(line-1).score+1 : MATE; // keine Zeile ist besser als die vorige
+                    int delta=ASPIRATION_WINDOW, alpha=-MATE, beta=cap;
+                    if(d>=4 && line<lines.size() && Math.abs(lines.get(line).score)<MATE_BOUND){
+                        alpha=lines.get(line).score-delta;
+                        beta=Math.min(cap, lines.get(line).score+delta);
+                    }
+                    if(alpha>=beta) alpha=beta-1;
+                    int score;
+                    while(true){
+                        score=searchRoot(b, remaining, d, alpha, beta);
+                        if(score<=alpha){ alpha=Math.max(-MATE, score-delta); delta*=2; }
+                        else if(score>=beta && beta<MATE){
+                            // über cap hinaus (TT-Effekte): exakten Score nachsuchen, sort ordnet die Zeilen dann neu
+                            beta=Math.min(beta<cap ? cap : MATE, score+delta); delta*=2;
+                            remaining.remove(rootBest); remaining.add(0, rootBest);
+                        }
+                        else break;
+                    }
+                    cur.add(new ScoredMove(rootBest, score, extendPv(b, rootPv(), d)));
+                    remaining.remove(rootBest);
+                }
+                cur.sort((x,y)-> Integer.compare(y.score, x.score)); // Zeilen, die ihre Grenze überschritten haben, nach vorn
+                lines=cur;
+                // gefundene Zeilen in der nächsten Iteration zuerst
+                for(int i=lines.size()-1;i>=0;i--){ Move m=lines.get(i).move; moves.remove(m); moves.add(0, m); }
             }
-            out.sort((x,y)-> Integer.compare(y.score, x.score));
-            return out;
+            lastDepth=Math.max(1,depth); lastScore=lines.get(0).score; lastPv=lines.get(0).pv;
+            return lines;
         }
         // Quick-Analyse: nur Top-K Wurzelzüge scoren
         int bestScoreApprox(Board b, int depth, int topK){
             List<Move> moves=b.legalMoves();
             if(moves.isEmpty()) return 0;
-            moves.sort((a,c)-> Boolean.compare((c.isCapture||c.isPromotion()), (a.isCapture||a.isPromotion())));
+            newSearch(Long.MAX_VALUE);
+            orderAll(b, moves);
             int limit = Math.min(topK, moves.size());
             int best = Integer.MIN_VALUE;
-            for(int i=0;i<limit;i++){
-                Move m=moves.get(i);
-                int s = scoreMove(b, m, depth);
-                if(s>best) best=s;
+            boolean attached=attachNnue(b);
+            try {
+                for(int i=0;i<limit;i++){
+                    Move m=moves.get(i);
+                    int s = scoreMove(b, m, depth);
+                    if(s>best) best=s;
+                }
+            } finally {
+                if(attached) b.detachNnue();
             }
             return best;
         }
-        private int negamax(Board b,int depth,int alpha,int beta,int ply){
-            List<Move> moves=b.legalMoves();
-            if(depth==0) return (b.sideToMove==Side.WHITE?1:-1)*Eval.evaluate(b);
-            if(moves.isEmpty()){
-                if(b.isInCheck(b.sideToMove)) return -MATE + ply;
+        // selektive Suche: Margen in cp je Resttiefe
+        private static final int RFP_MARGIN = 120, FUTILITY_MARGIN = 150;
+        // Schwelle für Mattwerte (Pruning nur bei normalen Bewertungen)
+        private static final int MATE_BOUND = MATE - 1000;
+        // LMR-Reduktion nach Resttiefe und Zugnummer (logarithmisch)
+        private static final int[][] LMR_REDUCTION = new int[64][64];
+        static {
+            for(int d=1;d<64;d++) for(int i=1;i<64;i++) LMR_REDUCTION[d][i]=(int)(0.75 + Math.log(d)*Math.log(i)/2.25);
+        }
+
+        private int negamax(Board b,int depth,int alpha,int beta,int ply,boolean allowNull){
+            nodes++;
+            pvLength[ply]=ply;
+            if(timeUp()) return 0;
+            // Remis durch Wiederholung oder 50-Züge-Regel (außer der Zug davor hat mattgesetzt)
+            if(b.isRepetition(ply)) return 0;
+            if(ply>0 && b.isFiftyMoveDraw() && (!b.isInCheck(b.sideToMove) || b.legalMoves(moveBuf[ply])>0)) return 0;
+            // Bitbasen: ein Remis steht fest; gewonnene Stellungen bewertet evaluate(), das Matt findet die Suche
+            if(options.bitbases && Long.bitCount(b.occAll)<=3 && Bitbases.probe(b)==Bitbases.DRAW) return 0;
+            boolean inCheck=b.isInCheck(b.sideToMove);
+            if(inCheck && options.checkExtensions && ply<2*rootDepth) depth++; // Schachverlängerung
+            if(depth<=0 || ply>=Board.MAX_PLY-1) return quiesce(b, alpha, beta, ply);
+            int alphaOrig=alpha, ttMove=0;
+            if(tt!=null){
+                long e=tt.probe(b.key);
+                if(e!=0){
+                    ttMove=TranspositionTable.move(e);
+                    if(TranspositionTable.depth(e)>=depth){
+                        int s=TranspositionTable.score(e,ply), bound=TranspositionTable.bound(e);
+                        if(bound==TranspositionTable.BOUND_EXACT
+                                || (bound==TranspositionTable.BOUND_LOWER && s>=beta)
+                                || (bound==TranspositionTable.BOUND_UPPER && s<=alpha)) return s;
+                    }
+                }
+            }
+            int staticEval = inCheck ? -MATE : evaluate(b);
+            boolean normalWindow = Math.abs(beta)<MATE_BOUND && Math.abs(alpha)<MATE_BOUND;
+            boolean pvNode = beta-alpha>1; // PV-Knoten werden nicht vorzeitig abgeschnitten
+            // Reverse Futility: so weit über beta, dass auch ein guter gegnerischer Zug nichts mehr ändert
+            if(options.reverseFutility && !pvNode && !inCheck && normalWindow && depth<=3 && staticEval-RFP_MARGIN*depth>=beta)
+                return staticEval-RFP_MARGIN*depth;
+            // Nullzug: nicht im Schach, nicht zweimal hintereinander, nur mit Figuren (Zugzwang in Bauernendspielen)
+            if(options.nullMove && allowNull && !pvNode && !inCheck && normalWindow && depth>=3 && staticEval>=beta && hasPieces(b, b.sideToMove)){
+                int r = 2 + depth/6;
+                UndoInfo nu=b.makeNull();
+                int val = -negamax(b, depth-1-r, -beta, -beta+1, ply+1, false);
+                b.unmakeNull(nu);
+                if(stopped) return 0;
+                if(val>=beta) return val>=MATE_BOUND ? beta : val; // keine unbewiesenen Mattwerte
+            }
+            int[] moves=moveBuf[ply];
+            int n=b.legalMoves(moves);
+            if(n==0){
+                if(inCheck) return -MATE + ply;
                 return 0;
             }
-            moves.sort((a,c)-> Boolean.compare((c.isCapture||c.isPromotion()), (a.isCapture||a.isPromotion())));
+            // Futility: flache Knoten, bei denen ruhige Züge alpha nicht mehr erreichen
+            boolean futile = options.futility && !pvNode && !inCheck && normalWindow && depth<=2 && staticEval+FUTILITY_MARGIN*depth<=alpha;
+            int[] scores=orderScores[ply];
+            scoreMoves(b, moves, n, scores, ttMove, ply);
             int best=Integer.MIN_VALUE/2;
-            for(Move m: moves){
-                Board nb=b.makeMove(m);
-                int val = -negamax(nb,depth-1,-beta,-alpha,ply+1);
+            int bestMove=0;
+            for(int i=0;i<n;i++){
+                int m=pickNext(moves, n, scores, i);
+                boolean quiet = Moves.isQuiet(m);
+                UndoInfo u=b.make(m);
+                boolean givesCheck = b.isInCheck(b.sideToMove);
+                if(futile && quiet && !givesCheck && i>0){ b.unmake(u); continue; }
+                int val;
+                if(i==0){
+                    val = -negamax(b, depth-1, -beta, -alpha, ply+1, true);
+                } else {
+                    // PVS: Nullfenster; späte ruhige Züge zusätzlich reduziert (LMR), bei Überraschung nachsuchen
+                    int r=0;
+                    if(options.lmr && depth>=3 && i>=3 && quiet && !inCheck && !givesCheck && scores[i]<SCORE_KILLER2)
+                        r = Math.min(LMR_REDUCTION[Math.min(depth,63)][Math.min(i,63)], depth-2);
+                    val = -negamax(b, depth-1-r, -alpha-1, -alpha, ply+1, true);
+                    if(val>alpha && r>0 && !stopped) val = -negamax(b, depth-1, -alpha-1, -alpha, ply+1, true);
+                    if(val>alpha && val<beta && !stopped) val = -negamax(b, depth-1, -beta, -alpha, ply+1, true);
+                }
+                b.unmake(u);
+                if(stopped) return 0; // Ergebnis unvollständig: nicht verwenden und nicht speichern
+                if(val>best){ best=val; bestMove=m; }
+                if(val>alpha){ alpha=val; updatePv(ply, m); }
+                if(alpha>=beta){
+                    if(quiet) updateQuietCutoff(b, m, depth, ply);
+                    break;
+                }
+            }
+            if(tt!=null){
+                int bound = best<=alphaOrig ? TranspositionTable.BOUND_UPPER
+                          : best>=beta ? TranspositionTable.BOUND_LOWER : TranspositionTable.BOUND_EXACT;
+                tt.store(b.key, depth, bound, best, ply, Moves.code(bestMove));
+            }
+            return best;
+        }
+
+        // Sicherheitsmarge für Delta-Pruning (cp): Positionsgewinn, den die Bewertung zusätzlich bringen kann
+        private static final int DELTA_MARGIN = 200;
+
+        /**
+         * Quiescence-Suche am Horizont: nur Schläge und Umwandlungen, mit Stand-Pat und Delta-Pruning.
+         * Im Schach gibt es kein Stand-Pat, dann werden alle Ausweichzüge durchsucht.
+         */
+        private int quiesce(Board b,int alpha,int beta,int ply){
+            nodes++;
+            pvLength[ply]=ply; // die Hauptvariante endet am Horizont
+            if(timeUp()) return 0;
+            if(ply>=Board.MAX_PLY-1) return evaluate(b);
+            boolean inCheck=b.isInCheck(b.sideToMove);
+            int standPat=0, best, n;
+            int[] moves=moveBuf[ply];
+            if(inCheck){
+                n=b.legalMoves(moves);
+                if(n==0) return -MATE + ply;
+                best=-MATE + ply;
+            } else {
+                standPat=evaluate(b);
+                if(standPat>=beta) return standPat;
+                if(standPat>alpha) alpha=standPat;
+                best=standPat;
+                n=b.legalCaptures(moves);
+            }
+            int[] scores=orderScores[ply];
+            scoreMoves(b, moves, n, scores, 0, ply);
+            for(int i=0;i<n;i++){
+                int m=pickNext(moves, n, scores, i);
+                if(!inCheck){
+                    if(Moves.isPromotion(m) && Moves.promo(m)!=PieceType.QUEEN) continue; // Unterverwandlungen bringen hier nichts
+                    // Delta-Pruning: die Schätzung des ausgelassenen Schlags bleibt Obergrenze des Ergebnisses (fail-soft)
+                    int estimate = standPat + captureGain(b,m) + DELTA_MARGIN;
+                    if(estimate <= alpha){ if(estimate>best) best=estimate; continue; }
+                    if(scores[i]<SCORE_CAPTURE) continue; // verlierender Schlag laut SEE
+                }
+                UndoInfo u=b.make(m);
+                int val = -quiesce(b,-beta,-alpha,ply+1);
+                b.unmake(u);
+                if(stopped) return 0;
                 if(val>best) best=val;
                 if(val>alpha) alpha=val;
                 if(alpha>=beta) break;
             }
             return best;
         }
-        static final class ScoredMove { final Move move; final int score; ScoredMove(Move m,int s){ move=m; score=s; } }
-    }
 
-    static final class StockfishAnalysis implements AutoCloseable {
-        private final Process proc;
-        private final BufferedReader in;
-        private final BufferedWriter out;
+        // Sortierstufen: TT-Zug > gewinnende/gleiche Schläge > Killer > History > verlierende Schläge (SEE < 0)
+        private static final int SCORE_TT = 3_000_000, SCORE_CAPTURE = 2_000_000, SCORE_KILLER1 = 1_000_001, SCORE_KILLER2 = 1_000_000;
+        private static final int SCORE_BAD_CAPTURE = -2_000_000;
+        private static final int HISTORY_MAX = 1 << 19; // bleibt unter den Killer-Stufen
+
+        private void scoreMoves(Board b, int[] moves, int n, int[] scores, int ttMove, int ply){
+            int side=b.sideToMove.ordinal();
+            int[] k = killers[ply]; // negamax und quiesce kehren vor MAX_PLY-1 zurück
+            for(int i=0;i<n;i++){
+                int m=moves[i];
+                int code=Moves.code(m);
+                if(code==ttMove && ttMove!=0) scores[i]=SCORE_TT;
+                else if(!Moves.isQuiet(m)){
+                    // MVV-LVA: wertvollstes Opfer, bei Gleichstand billigster Angreifer; SEE nur, wenn das Opfer billiger ist
+                    int gain=captureGain(b,m), attacker=Eval.val(b.sq[Moves.from(m)].type);
+                    boolean losing = !Moves.isPromotion(m) && gain<attacker && b.see(m)<0;
+                    scores[i]=(losing ? SCORE_BAD_CAPTURE : SCORE_CAPTURE) + gain*16 - attacker/16;
+                }
+                else if(code==k[0]) scores[i]=SCORE_KILLER1;
+                else if(code==k[1]) scores[i]=SCORE_KILLER2;
+                else scores[i]=history[(side*64+Moves.from(m))*64+Moves.to(m)];
+            }
+        }
+
+        // Selection-Sort-Schritt: bringt den besten noch offenen Zug an Position i
+        private static int pickNext(int[] moves, int n, int[] scores, int i){
+            int bi=i;
+            for(int j=i+1;j<n;j++) if(scores[j]>scores[bi]) bi=j;
+            int m=moves[bi];
+            if(bi!=i){
+                moves[bi]=moves[i]; moves[i]=m;
+                int t=scores[bi]; scores[bi]=scores[i]; scores[i]=t;
+            }
+            return m;
+        }
 
-        StockfishAnalysis() throws IOException {
-            ProcessBuilder pb = new ProcessBuilder("stockfish");
-            pb.redirectErrorStream(true);
-            proc = pb.start();
-            in = new BufferedReader(new InputStreamReader(proc.getInputStream()));
-            out = new BufferedWriter(new OutputStreamWriter(proc.getOutputStream()));
-            send("uci");
-            waitFor("uciok");
-            send("isready");
-            waitFor("readyok");
+        // Wurzel: einmal vollständig sortieren (die Wurzelliste bleibt eine List<Move>)
+        private void orderAll(Board b, List<Move> moves){
+            int[] buf=moveBuf[0], scores=orderScores[0];
+            int n=moves.size();
+            for(int i=0;i<n;i++) buf[i]=Moves.of(moves.get(i));
+            scoreMoves(b, buf, n, scores, 0, 0);
+            for(int i=0;i<n;i++) pickNext(buf, n, scores, i);
+            moves.clear();
+            moves.addAll(Moves.toList(buf, n));
         }
 
-        private void send(String cmd) throws IOException {
-            out.write(cmd);
-            out.write("\n");
-            out.flush();
+        private void updateQuietCutoff(Board b, int m, int depth, int ply){
+            int code=Moves.code(m);
+            int[] k=killers[ply];
+            if(k[0]!=code){ k[1]=k[0]; k[0]=code; }
+            int h=(b.sideToMove.ordinal()*64+Moves.from(m))*64+Moves.to(m);
+            history[h]+=depth*depth;
+            if(history[h]>=HISTORY_MAX) for(int i=0;i<history.length;i++) history[i]>>=1;
         }
 
-        private void waitFor(String token) throws IOException {
-            String line;
-            while((line = in.readLine()) != null){
-                if(line.contains(token)) break;
+        // Bewertung aus Sicht der Seite am Zug: NNUE, wenn das Brett einen Akkumulator hat, sonst Eval
+        private int evaluate(Board b){
+            if(options.bitbases && Long.bitCount(b.occAll)<=3){
+                int r=Bitbases.probe(b);
+                if(r==Bitbases.DRAW) return 0;
+                if(r==Bitbases.WIN) return knownWin(b, b.sideToMove);
+                if(r==Bitbases.LOSS) return -knownWin(b, b.sideToMove.opposite());
+            }
+            if(b.nnue!=null){
+                if(Eval.DEBUG && !b.nnue.consistent(b)) throw new IllegalStateException("NNUE-Akkumulator weicht ab: "+b.toFEN());
+                return b.nnue.evaluate(b.sideToMove);
             }
+            return (b.sideToMove==Side.WHITE?1:-1)*Eval.evaluate(b, pawns);
+        }
+
+        // sicher gewonnen (Bitbasen), unterhalb der Mattwerte
+        private static final int KNOWN_WIN = 10_000;
+
+        // Fortschritt im gewonnenen Endspiel: Bauer vor, schwacher König an den Rand, eigener König heran
+        private static int knownWin(Board b, Side strong){
+            int sk=b.kingSquare(strong), wk=b.kingSquare(strong.opposite());
+            int s=KNOWN_WIN;
+            long pawns=b.bb[Bitboards.index(PieceType.PAWN, strong)];
+            if(pawns!=0){
+                int r=Board.rank(Long.numberOfTrailingZeros(pawns));
+                s += 20*(strong==Side.WHITE ? r : 7-r);
+            }
+            int wf=Board.file(wk), wr=Board.rank(wk);
+            s += 10*(Math.max(3-wf, wf-4) + Math.max(3-wr, wr-4));
+            s += 4*(14 - Math.abs(Board.file(sk)-wf) - Math.abs(Board.rank(sk)-wr));
+            return s;
+        }
+
+        // mindestens eine Figur außer Bauern und König
+        private static boolean hasPieces(Board b, Side s){
+            int o=s.ordinal()*6;
+            return (b.occ[s.ordinal()] & ~(b.bb[o+Bitboards.PAWN] | b.bb[o+Bitboards.KING])) != 0;
+        }
+
+        // Materialgewinn eines Schlag-/Umwandlungszugs (Wert des Opfers + Umwandlungsgewinn)
+        private static int captureGain(Board b, int m){
+            int to=Moves.to(m);
+            int gain = Moves.isEnPassant(m) ? Eval.val(PieceType.PAWN) : (b.sq[to]!=null ? Eval.val(b.sq[to].type) : 0);
+            if(Moves.isPromotion(m)) gain += Eval.val(Moves.promo(m)) - Eval.val(PieceType.PAWN);
+            return gain;
+        }
+
+        static final class ScoredMove {
+            final Move move; final int score;
+            final List<Move> pv; // Hauptvariante ab move (inkl.)
+            ScoredMove(Move m,int s,List<Move> pv){ move=m; score=s; this.pv=pv; }
+            String pvString(){
+                StringBuilder sb=new StringBuilder();
+                for(Move x: pv){ if(sb.length()>0) sb.append(' '); sb.append(x); }
+                return sb.toString();
+            }
+        }
+    }
+
+    /**
+     * Post-game analysis on its own long-lived {@link StockfishEngine}: the process is started
+     * once with the path of the playing engine and kept across games, so handshake and hash
+     * table are reused. A separate process keeps MultiPV out of the games against Stockfish.
+     */
+    static final class StockfishAnalysis implements AutoCloseable {
+        private final StockfishEngine engine;
+        private int multiPv = 1;
+
+        StockfishAnalysis(String path){ engine = new StockfishEngine(path); }
+
+        String getPath(){ return engine.getPath(); }
+
+        /** Vor jeder Analyse: startet den Prozess bei Bedarf (auch nach Absturz) und wartet auf readyok. */
+        void prepare() throws IOException {
+            if(!engine.isRunning()){ engine.start(); multiPv = 1; }
+            engine.sendCommand("stop"); // Reste einer abgebrochenen Analyse
+            engine.waitReady();
+        }
+
+        private void send(String cmd) throws IOException { engine.sendCommand(cmd); }
+
+        // MultiPV ist eine UCI-Option, kein Parameter von "go"
+        private void setMultiPv(int n) throws IOException {
+            if(n == multiPv) return;
+            send("setoption name MultiPV value " + n);
+            multiPv = n;
         }
 
         List<EngineLine> analyze(String fen, int depth, int multipv) throws IOException {
+            setMultiPv(multipv);
             send("position fen " + fen);
-            send("go depth " + depth + " multipv " + multipv);
+            send("go depth " + depth);
             List<EngineLine> res = new ArrayList<>();
             String line;
-            while((line = in.readLine()) != null){
+            while((line = engine.readResponse()) != null){
                 if(line.startsWith("info") && line.contains(" pv ")){
                     String[] t = line.split("\\s+");
                     int mv=1; String scoreType="cp"; int score=0; String pv=""; String move="";
@@ -625,7 +1730,7 @@ public class ChessGUI {
             send("go depth " + depth + " searchmoves " + move);
             EngineLine result = null;
             String line;
-            while((line = in.readLine()) != null){
+            while((line = engine.readResponse()) != null){
                 if(line.startsWith("info") && line.contains(" pv ")){
                     String[] t=line.split("\\s+");
                     String scoreType="cp"; int score=0; String pv="";
@@ -645,10 +1750,10 @@ public class ChessGUI {
             return result;
         }
 
-        @Override public void close() throws IOException {
-            send("quit");
-            try{ proc.waitFor(); }catch(InterruptedException ignored){}
-        }
+        @Override public void close(){ engine.stop(); }
+
+        /** Beendet den Prozess, ohne die Streams anzufassen (falls eine Analyse nicht rechtzeitig endet). */
+        void kill(){ engine.kill(); }
 
         static final class EngineLine {
             final String move;
@@ -706,6 +1811,17 @@ public class ChessGUI {
     private JLabel capNorthLabel, capSouthLabel;
 
     private StockfishEngine engine;
+    // Analyse-Engine: erst bei der ersten Analyse gestartet, dann bis zum Beenden behalten. Nur auf
+    // analysisExecutor benutzt (auch zum Schließen), so greifen nie zwei Threads auf ihre Streams zu.
+    private volatile StockfishAnalysis analysis;
+    private final ExecutorService analysisExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "stockfish-analysis");
+        t.setDaemon(true);
+        return t;
+    });
+    private SwingWorker<?,?> analysisWorker;
+    private PolyglotBook book; // null = kein Buch (book.path fehlt)
+    private final SplittableRandom bookRandom = new SplittableRandom();
     private int engineDepth = 3;
     private Side human = Side.WHITE;
     private boolean flip = false; // true = Schwarz unten
@@ -759,6 +1875,7 @@ public class ChessGUI {
 
         engine = new StockfishEngine();
         try { engine.start(); } catch (IOException ex) { System.err.println("Stockfish start failed: " + ex.getMessage()); }
+        book = PolyglotBook.loadDefault();
 
         boardPanel=new BoardPanel();
         JPanel boardContainer=new JPanel(new BorderLayout());
@@ -790,7 +1907,7 @@ public class ChessGUI {
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
         frame.addWindowListener(new java.awt.event.WindowAdapter(){
-            @Override public void windowClosing(java.awt.event.WindowEvent e){ if(engine!=null) engine.stop(); }
+            @Override public void windowClosing(java.awt.event.WindowEvent e){ stopEngines(); }
         });
         updateEvalBar();
         updateScoreBoard();
@@ -809,7 +1926,7 @@ public class ChessGUI {
         newB.addActionListener(e -> newGame(Side.BLACK));
         undo.addActionListener(e -> onUndo());
         analyzeInfo.addActionListener(e -> JOptionPane.showMessageDialog(frame, "Die Post‑Game‑Analyse startet automatisch bei Spielende (Matt/Patt).", "Info", JOptionPane.INFORMATION_MESSAGE));
-        quit.addActionListener(e -> { if(engine!=null) engine.stop(); frame.dispose(); });
+        quit.addActionListener(e -> { stopEngines(); frame.dispose(); });
         game.add(newW); game.add(newB); game.addSeparator(); game.add(undo); game.add(analyzeInfo); game.addSeparator(); game.add(quit);
 
         JMenu view = new JMenu("Ansicht");
@@ -925,6 +2042,20 @@ public class ChessGUI {
         depthLabel.setText("ELO ca. " + ELO_LEVELS[idx] + "  –  " + labelFromIndex(idx) + "  (Tiefe " + engineDepth + ")");
     }
 
+    private void stopEngines(){
+        if(engine!=null) engine.stop();
+        if(analysisExecutor.isShutdown()) return; // schon beendet (Menü "Beenden" und Fensterschließen)
+        // laufende Analyse nach der aktuellen Stellung beenden, dann auf demselben Thread schließen
+        if(analysisWorker!=null) analysisWorker.cancel(false);
+        analysisExecutor.execute(() -> { if(analysis!=null){ analysis.close(); analysis=null; } });
+        analysisExecutor.shutdown();
+        try {
+            if(!analysisExecutor.awaitTermination(3, TimeUnit.SECONDS) && analysis!=null) analysis.kill();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private void restartEngine(){
         try{
             if(engine!=null) engine.stop();
@@ -982,9 +2113,10 @@ public class ChessGUI {
 
         status.setText("Hint wird berechnet…");
         busy = true;
+        final String fen = board.toFEN(); // auf dem EDT lesen: legalMoves() verändert board kurzzeitig per make/unmake
         new SwingWorker<Move,Void>(){
             @Override protected Move doInBackground(){
-                try{ return engine.getBestMove(board.toFEN(), engineDepth); }
+                try{ return engine.getBestMove(fen, engineDepth); }
                 catch(Exception ex){ return null; }
             }
             @Override protected void done(){
@@ -1006,13 +2138,21 @@ public class ChessGUI {
 
     private void maybeAIThink(){
         if(busy) return;
-        if(board.legalMoves().isEmpty()){ onGameOverWithAnalysis(); return; }
+        if(isGameOver()){ onGameOverWithAnalysis(); return; }
         if(board.sideToMove!=human){
             status.setText("KI denkt… (Tiefe "+engineDepth+")");
             busy=true;
+            final String fen = board.toFEN();
             new SwingWorker<Move,Void>(){
                 @Override protected Move doInBackground(){
-                    try{ return engine.getBestMove(board.toFEN(), engineDepth); }
+                    try{
+                        // erst das Eröffnungsbuch, nur außerhalb davon sucht Stockfish
+                        if(book!=null){
+                            Move bm=book.weightedMove(Board.fromFEN(fen), bookRandom);
+                            if(bm!=null) return bm;
+                        }
+                        return engine.getBestMove(fen, engineDepth);
+                    }
                     catch(Exception ex){ return null; }
                 }
                 @Override protected void done(){
@@ -1021,7 +2161,7 @@ public class ChessGUI {
                         if(m==null){ onGameOverWithAnalysis(); busy=false; return; }
                         Timer delay = new Timer(AI_DELAY_MS, e ->
                                 playMove(m,
-                                        () -> status.setText(board.legalMoves().isEmpty()
+                                        () -> status.setText(isGameOver()
                                                 ? "Spielende."
                                                 : "Du bist dran (" + human + ")."),
                                         false)); // <— teleport AI move too
@@ -1035,9 +2175,22 @@ public class ChessGUI {
         }
     }
 
+    // Matt und Patt gehen vor: ein mattsetzender Zug gewinnt auch im hundertsten Halbzug
+    private static String drawReason(Board b){
+        if(b.isThreefoldRepetition()) return "dreifache Stellungswiederholung";
+        if(b.isFiftyMoveDraw()) return "50-Züge-Regel";
+        return null;
+    }
+
+    private boolean isGameOver(){
+        return board.legalMoves().isEmpty() || drawReason(board)!=null;
+    }
+
     private void onGameOverWithAnalysis(){
+        boolean mateOrStalemate = board.legalMoves().isEmpty();
         boolean check = board.isInCheck(board.sideToMove);
-        String msg = check ? ("Schachmatt! "+board.sideToMove+" ist matt. "+board.sideToMove.opposite()+" gewinnt.")
+        String msg = !mateOrStalemate ? ("Remis durch " + drawReason(board) + ".")
+                : check ? ("Schachmatt! "+board.sideToMove+" ist matt. "+board.sideToMove.opposite()+" gewinnt.")
                 : "Patt! Unentschieden.";
         JOptionPane.showMessageDialog(frame, msg + "\nDie Partie wird jetzt mit Stockfish analysiert.", "Spielende", JOptionPane.INFORMATION_MESSAGE);
         runPostGameAnalysis();
@@ -1060,7 +2213,7 @@ public class ChessGUI {
                 updateEvalBar();
                 busy = false;
 
-                if(board.legalMoves().isEmpty()){
+                if(isGameOver()){
                     onGameOverWithAnalysis();
                     return;
                 }
@@ -1075,7 +2228,7 @@ public class ChessGUI {
             updateEvalBar();
             busy = false;
 
-            if(board.legalMoves().isEmpty()){
+            if(isGameOver()){
                 onGameOverWithAnalysis();
                 return;
             }
@@ -1234,12 +2387,19 @@ public class ChessGUI {
         progress.setSize(320,90);
         progress.setLocationRelativeTo(frame);
 
+        final String enginePath = engine.getPath(); // gleicher Pfad wie die Spiel-Engine
+
         SwingWorker<AnalysisResult,Integer> worker = new SwingWorker<>() {
-            @Override protected AnalysisResult doInBackground(){
+            @Override protected AnalysisResult doInBackground() throws IOException {
                 int sumLossW=0, sumLossB=0, countW=0, countB=0;
                 List<MoveAnalysis> rows=new ArrayList<>();
-                try(StockfishAnalysis sf = new StockfishAnalysis()){
-                    for(int i=0;i<totalPlies;i++){
+                // läuft auf analysisExecutor: nach einem Pfadwechsel wird der Analyseprozess hier ersetzt
+                if(analysis!=null && !analysis.getPath().equals(enginePath)){ analysis.close(); analysis=null; }
+                if(analysis==null) analysis = new StockfishAnalysis(enginePath);
+                final StockfishAnalysis sf = analysis;
+                sf.prepare(); // Startfehler (z. B. falscher Pfad) landen in done()
+                try{
+                    for(int i=0;i<totalPlies && !isCancelled();i++){
                         PlyRecord pr = plies.get(i);
                         Side mover = pr.before.sideToMove;
                         String fen = pr.before.toFEN();
@@ -1270,7 +2430,8 @@ public class ChessGUI {
                         publish(i+1);
                     }
                 }catch(IOException ex){
-                    // ignore
+                    // Prozess abgestürzt: bisherige Züge zeigen, beim nächsten Mal neu starten
+                    sf.close();
                 }
                 int acplW = countW==0?0: (int)Math.round((double)sumLossW/countW);
                 int acplB = countB==0?0: (int)Math.round((double)sumLossB/countB);
@@ -1283,16 +2444,20 @@ public class ChessGUI {
             }
             @Override protected void done(){
                 progress.dispose();
+                if(isCancelled()) return; // Programmende
                 try{
                     AnalysisResult ar = get();
                     if(!ar.rows.isEmpty()) evalBar.setEvalCp(ar.rows.get(ar.rows.size()-1).evalAfterW, flip);
                     showAnalysisDialog(ar);
                 } catch(Exception ex){
-                    JOptionPane.showMessageDialog(frame,"Analyse fehlgeschlagen.","Analyse",JOptionPane.ERROR_MESSAGE);
+                    Throwable cause = ex.getCause()!=null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(frame,"Analyse fehlgeschlagen: " + cause.getMessage()
+                            + "\nStockfish-Pfad: " + enginePath,"Analyse",JOptionPane.ERROR_MESSAGE);
                 }
             }
         };
-        worker.execute();
+        analysisWorker = worker;
+        analysisExecutor.execute(worker);
         progress.setVisible(true);
     }
 
@@ -1567,6 +2732,8 @@ public class ChessGUI {
 
             // NEW: don’t start a drag while the AI/animation is running
             if (busy || animating) { beep(); return; }
+            // nach Remis durch Wiederholung/50 Züge wird nicht weitergespielt
+            if (drawReason(board) != null) { beep(); return; }
 
             requestFocusInWindow();
             int i = pointToSquare(e.getX(), e.getY());
@@ -0,0 +1,61 @@
+/**
+ * Packed {@code int} moves for the search and perft hot paths. The move
+ * generator writes them into caller-owned {@code int[]} buffers, so search and
+ * perft allocate no per-node objects; {@link ChessGUI.Move} remains the type of
+ * the GUI/UCI layer and is converted with {@link #of} and {@link #toMove}.
+ *
+ * <p>Layout: bits 0-5 from, 6-11 to, 12-14 promotion ({@code PieceType.ordinal()+1},
+ * 0 = none), 16 capture, 17 en passant, 18 short castle, 19 long castle. The low
+ * 16 bits equal {@link TranspositionTable#encodeMove}; 0 is never a legal move.
+ */
+final class Moves {
+    private Moves() {}
+
+    /** Buffer size per position (at most 218 legal moves exist). */
+    static final int MAX_MOVES = 256;
+
+    static final int CAPTURE = 1 << 16, EN_PASSANT = 1 << 17, CASTLE_K = 1 << 18, CASTLE_Q = 1 << 19;
+    private static final ChessGUI.PieceType[] PROMO = {
+            null, ChessGUI.PieceType.KING, ChessGUI.PieceType.QUEEN, ChessGUI.PieceType.ROOK,
+            ChessGUI.PieceType.BISHOP, ChessGUI.PieceType.KNIGHT, ChessGUI.PieceType.PAWN, null
+    };
+
+    static int make(int from, int to){ return from | (to << 6); }
+    static int make(int from, int to, int flags){ return from | (to << 6) | flags; }
+    static int promotion(int from, int to, ChessGUI.PieceType promo, boolean capture){
+        return from | (to << 6) | ((promo.ordinal() + 1) << 12) | (capture ? CAPTURE : 0);
+    }
+
+    static int from(int m){ return m & 63; }
+    static int to(int m){ return (m >>> 6) & 63; }
+    static ChessGUI.PieceType promo(int m){ return PROMO[(m >>> 12) & 7]; }
+    static boolean isPromotion(int m){ return (m & 0x7000) != 0; }
+    static boolean isCapture(int m){ return (m & CAPTURE) != 0; }
+    static boolean isEnPassant(int m){ return (m & EN_PASSANT) != 0; }
+    static boolean isCastle(int m){ return (m & (CASTLE_K | CASTLE_Q)) != 0; }
+    static boolean isQuiet(int m){ return (m & (CAPTURE | 0x7000)) == 0; }
+
+    /** 16-bit code without flags, as stored in the transposition table and the killer slots. */
+    static int code(int m){ return m & 0xFFFF; }
+
+    static int of(ChessGUI.Move m){
+        int flags = (m.isCapture ? CAPTURE : 0) | (m.enPassant ? EN_PASSANT : 0)
+                  | (m.castleK ? CASTLE_K : 0) | (m.castleQ ? CASTLE_Q : 0);
+        return m.isPromotion() ? promotion(m.from, m.to, m.promotion, m.isCapture) | flags : make(m.from, m.to, flags);
+    }
+
+    static ChessGUI.Move toMove(int m){
+        return new ChessGUI.Move(from(m), to(m), promo(m), (m & CASTLE_K) != 0, (m & CASTLE_Q) != 0, isEnPassant(m), isCapture(m));
+    }
+
+    static java.util.List<ChessGUI.Move> toList(int[] buf, int n){
+        java.util.List<ChessGUI.Move> list = new java.util.ArrayList<>(n);
+        for(int i=0;i<n;i++) list.add(toMove(buf[i]));
+        return list;
+    }
+
+    static String toString(int m){
+        ChessGUI.PieceType p = promo(m);
+        return ChessGUI.UCI.fromTo(from(m), to(m)) + (p != null ? String.valueOf(ChessGUI.UCI.promoChar(p)) : "");
+    }
+}
@@ -0,0 +1,214 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+
+/**
+ * Small NNUE-style evaluator: 768 piece-square inputs per perspective, one
+ * hidden layer of {@code hidden} int16 neurons (the accumulator, updated
+ * incrementally by {@link ChessGUI.Board#set}), clipped ReLU and a single
+ * linear output over both perspectives (side to move first).
+ *
+ * <p>Weight file (little endian): magic {@code "JNUE"}, int version (1),
+ * int hidden, then int16 feature weights {@code [768][hidden]}, int16 feature
+ * biases {@code [hidden]}, int16 output weights {@code [2*hidden]} and an
+ * int32 output bias.
+ *
+ * <p>The hot loops run through a {@link Kernel}. {@code NnueSimd} uses
+ * {@code jdk.incubator.vector} and is loaded reflectively, so the class works
+ * without the incubator module and then falls back to {@link ScalarKernel}.
+ *
+ * <pre>
+ * java -cp out Nnue random &lt;file&gt; [hidden]   (writes a randomly initialised net, for testing)
+ * java -cp out Nnue eval &lt;file&gt; [fen]
+ * </pre>
+ */
+final class Nnue {
+    static final int INPUTS = 768;
+    // Quantisierung: Aktivierung 0..QA, Ausgabegewichte mit QB skaliert, SCALE = cp je Ausgabeeinheit
+    static final int QA = 255, QB = 64, SCALE = 400;
+    private static final int MAGIC = 0x454E554A; // "JNUE" little endian
+    private static final int VERSION = 1;
+    // Bewertungen bleiben deutlich unter den Mattwerten der Suche
+    private static final int MAX_EVAL = 20_000;
+
+    final int hidden;
+    final short[] featureWeights; // [Feature][hidden], Spalte eines Features liegt zusammenhängend
+    final short[] featureBias;
+    final short[] outputWeights;  // [0, hidden): Seite am Zug, [hidden, 2*hidden): Gegner
+    final int outputBias;
+    final Kernel kernel;
+
+    /** Inner loops of the network; implementations must give bit-identical results. */
+    interface Kernel {
+        /** {@code acc[i] += w[off+i]} (int16 wrap-around) for {@code i < acc.length}. */
+        void add(short[] acc, short[] w, int off);
+        /** {@code acc[i] -= w[off+i]} (int16 wrap-around) for {@code i < acc.length}. */
+        void sub(short[] acc, short[] w, int off);
+        /** Sum of {@code clamp(us[i],0,QA)*w[i] + clamp(them[i],0,QA)*w[n+i]} with {@code n = us.length}. */
+        int output(short[] us, short[] them, short[] w);
+        String name();
+    }
+
+    static final class ScalarKernel implements Kernel {
+        @Override public void add(short[] acc, short[] w, int off){
+            for(int i=0;i<acc.length;i++) acc[i] += w[off+i];
+        }
+        @Override public void sub(short[] acc, short[] w, int off){
+            for(int i=0;i<acc.length;i++) acc[i] -= w[off+i];
+        }
+        @Override public int output(short[] us, short[] them, short[] w){
+            int n = us.length, sum = 0;
+            for(int i=0;i<n;i++){
+                sum += Math.min(Math.max(us[i], 0), QA) * w[i];
+                sum += Math.min(Math.max(them[i], 0), QA) * w[n+i];
+            }
+            return sum;
+        }
+        @Override public String name(){ return "skalar"; }
+    }
+
+    /** Vector API kernel if the incubator module is available ({@code --add-modules jdk.incubator.vector}), else scalar. */
+    static Kernel defaultKernel(){
+        if(Boolean.getBoolean("chess.nnueScalar")) return new ScalarKernel();
+        try {
+            return (Kernel)Class.forName("NnueSimd").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e){
+            return new ScalarKernel();
+        }
+    }
+
+    Nnue(int hidden, short[] featureWeights, short[] featureBias, short[] outputWeights, int outputBias, Kernel kernel){
+        // Vielfaches von 64, damit die Vektorschleifen ohne Rest auskommen
+        if(hidden <= 0 || hidden % 64 != 0) throw new IllegalArgumentException("hidden muss ein Vielfaches von 64 sein: " + hidden);
+        if(featureWeights.length != INPUTS*hidden || featureBias.length != hidden || outputWeights.length != 2*hidden)
+            throw new IllegalArgumentException("Gewichte passen nicht zu hidden=" + hidden);
+        this.hidden = hidden;
+        this.featureWeights = featureWeights;
+        this.featureBias = featureBias;
+        this.outputWeights = outputWeights;
+        this.outputBias = outputBias;
+        this.kernel = kernel;
+    }
+
+    /** Same weights, different kernel (for benchmarks). */
+    Nnue withKernel(Kernel k){ return new Nnue(hidden, featureWeights, featureBias, outputWeights, outputBias, k); }
+
+    static Nnue load(Path file) throws IOException {
+        try(FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)){
+            ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()).order(ByteOrder.LITTLE_ENDIAN);
+            if(buf.remaining() < 12 || buf.getInt() != MAGIC) throw new IOException("Keine NNUE-Datei: " + file);
+            int version = buf.getInt();
+            if(version != VERSION) throw new IOException("Nicht unterstützte NNUE-Version " + version + ": " + file);
+            int hidden = buf.getInt();
+            long expected = 12L + 2L*((long)INPUTS*hidden + hidden + 2L*hidden) + 4;
+            if(hidden <= 0 || ch.size() != expected) throw new IOException("NNUE-Datei hat falsche Größe (" + ch.size() + " statt " + expected + "): " + file);
+            short[] fw = new short[INPUTS*hidden], fb = new short[hidden], ow = new short[2*hidden];
+            buf.asShortBuffer().get(fw).get(fb).get(ow);
+            buf.position(buf.position() + 2*(fw.length + fb.length + ow.length));
+            return new Nnue(hidden, fw, fb, ow, buf.getInt(), defaultKernel());
+        }
+    }
+
+    void save(Path file) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(12 + 2*(featureWeights.length + featureBias.length + outputWeights.length) + 4)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(hidden);
+        for(short s: featureWeights) buf.putShort(s);
+        for(short s: featureBias) buf.putShort(s);
+        for(short s: outputWeights) buf.putShort(s);
+        buf.putInt(outputBias);
+        Files.write(file, buf.array());
+    }
+
+    /** Randomly initialised net: useless for play, but exercises file format, accumulators and kernels. */
+    static Nnue random(long seed, int hidden){
+        SplittableRandom rnd = new SplittableRandom(seed);
+        short[] fw = new short[INPUTS*hidden], fb = new short[hidden], ow = new short[2*hidden];
+        for(int i=0;i<fw.length;i++) fw[i] = (short)rnd.nextInt(-64, 65);
+        for(int i=0;i<fb.length;i++) fb[i] = (short)rnd.nextInt(0, 128);
+        for(int i=0;i<ow.length;i++) ow[i] = (short)rnd.nextInt(-32, 33);
+        return new Nnue(hidden, fw, fb, ow, 0, defaultKernel());
+    }
+
+    // Eingang aus Sicht von persp: eigene Figuren zuerst, Brett für Schwarz gespiegelt
+    static int feature(int persp, int k, int sq){
+        int side = k / 6, type = k % 6;
+        return ((side == persp ? 0 : 6) + type) * 64 + (persp == 0 ? sq : sq ^ 56);
+    }
+
+    /** Accumulator of one board for both perspectives; kept current by {@link ChessGUI.Board#set}. */
+    static final class Accumulator {
+        final Nnue net;
+        final short[][] v;
+
+        Accumulator(Nnue net){
+            this.net = net;
+            v = new short[2][net.hidden];
+        }
+
+        /** Full recompute from the board's bitboards. */
+        void refresh(ChessGUI.Board b){
+            for(int p=0;p<2;p++){
+                System.arraycopy(net.featureBias, 0, v[p], 0, net.hidden);
+                for(int k=0;k<12;k++) for(long pcs=b.bb[k]; pcs!=0; pcs&=pcs-1){
+                    net.kernel.add(v[p], net.featureWeights, feature(p, k, Long.numberOfTrailingZeros(pcs)) * net.hidden);
+                }
+            }
+        }
+
+        void add(int k, int sq){
+            net.kernel.add(v[0], net.featureWeights, feature(0, k, sq) * net.hidden);
+            net.kernel.add(v[1], net.featureWeights, feature(1, k, sq) * net.hidden);
+        }
+
+        void remove(int k, int sq){
+            net.kernel.sub(v[0], net.featureWeights, feature(0, k, sq) * net.hidden);
+            net.kernel.sub(v[1], net.featureWeights, feature(1, k, sq) * net.hidden);
+        }
+
+        Accumulator copy(){
+            Accumulator a = new Accumulator(net);
+            System.arraycopy(v[0], 0, a.v[0], 0, net.hidden);
+            System.arraycopy(v[1], 0, a.v[1], 0, net.hidden);
+            return a;
+        }
+
+        /** Score in centipawns from the side to move's point of view. */
+        int evaluate(ChessGUI.Side stm){
+            int us = stm.ordinal();
+            long out = (long)net.kernel.output(v[us], v[1-us], net.outputWeights) + net.outputBias;
+            int cp = (int)(out * SCALE / (QA * QB));
+            return Math.max(-MAX_EVAL, Math.min(MAX_EVAL, cp));
+        }
+
+        boolean consistent(ChessGUI.Board b){
+            Accumulator fresh = new Accumulator(net);
+            fresh.refresh(b);
+            return java.util.Arrays.equals(v[0], fresh.v[0]) && java.util.Arrays.equals(v[1], fresh.v[1]);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String cmd = args.length > 0 ? args[0] : "";
+        switch(cmd){
+            case "random" -> {
+                int hidden = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+                random(1, hidden).save(Path.of(args[1]));
+                System.out.println("Zufallsnetz mit " + hidden + " Neuronen geschrieben: " + args[1]);
+            }
+            case "eval" -> {
+                Nnue net = load(Path.of(args[1]));
+                String fen = args.length > 2 ? String.join(" ", java.util.Arrays.copyOfRange(args, 2, args.length)) : Perft.START_FEN;
+                ChessGUI.Board b = ChessGUI.Board.fromFEN(fen);
+                b.attachNnue(net);
+                System.out.println("NNUE (" + net.kernel.name() + "): " + b.nnue.evaluate(b.sideToMove) + " cp aus Sicht der Seite am Zug");
+            }
+            default -> System.err.println("Aufruf: Nnue random <datei> [hidden] | eval <datei> [fen]");
+        }
+    }
+}
@@ -0,0 +1,50 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link Nnue.Kernel} on the Vector API. Only loaded reflectively by
+ * {@link Nnue#defaultKernel()}; without {@code --add-modules jdk.incubator.vector}
+ * at runtime the class fails to link and the scalar kernel is used instead.
+ */
+final class NnueSimd implements Nnue.Kernel {
+    private static final VectorSpecies<Short> S = ShortVector.SPECIES_PREFERRED;
+    // für das Skalarprodukt: halb so breite Short-Vektoren, die sich 1:1 in einen Int-Vektor erweitern lassen
+    private static final VectorSpecies<Integer> I = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Short> SH = VectorSpecies.of(short.class, VectorShape.forBitSize(I.vectorBitSize() / 2));
+
+    @Override public void add(short[] acc, short[] w, int off){
+        for(int i=0;i<acc.length;i+=S.length()){
+            ShortVector.fromArray(S, acc, i).add(ShortVector.fromArray(S, w, off+i)).intoArray(acc, i);
+        }
+    }
+
+    @Override public void sub(short[] acc, short[] w, int off){
+        for(int i=0;i<acc.length;i+=S.length()){
+            ShortVector.fromArray(S, acc, i).sub(ShortVector.fromArray(S, w, off+i)).intoArray(acc, i);
+        }
+    }
+
+    @Override public int output(short[] us, short[] them, short[] w){
+        int n = us.length;
+        IntVector sum = IntVector.zero(I);
+        for(int i=0;i<n;i+=SH.length()){
+            sum = sum.add(clamped(us, i).mul(widen(w, i)));
+            sum = sum.add(clamped(them, i).mul(widen(w, n+i)));
+        }
+        return sum.reduceLanes(VectorOperators.ADD);
+    }
+
+    private static IntVector clamped(short[] a, int i){
+        ShortVector v = ShortVector.fromArray(SH, a, i).max((short)0).min((short)Nnue.QA);
+        return (IntVector)v.convertShape(VectorOperators.S2I, I, 0);
+    }
+
+    private static IntVector widen(short[] a, int i){
+        return (IntVector)ShortVector.fromArray(SH, a, i).convertShape(VectorOperators.S2I, I, 0);
+    }
+
+    @Override public String name(){ return "Vector API (" + S.length() + " x int16)"; }
+}
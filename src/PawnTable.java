@@ -0,0 +1,38 @@
+/**
+ * Cache for the pawn structure term of {@link ChessGUI.Eval}, keyed on the
+ * pawn-only Zobrist key {@link ChessGUI.Board#pawnKey}. Pawn structures repeat
+ * far more often than whole positions, so almost every lookup hits.
+ *
+ * <p>Not thread-safe: every search thread owns its own table.
+ */
+final class PawnTable {
+    private final long[] keys;
+    private final int[] scores;
+    private final int mask;
+    long hits, misses;
+
+    /** @param bits log2 of the number of entries */
+    PawnTable(int bits){
+        keys = new long[1 << bits];
+        scores = new int[1 << bits];
+        mask = (1 << bits) - 1;
+    }
+
+    PawnTable(){ this(14); }
+
+    /** Pawn structure score from White's point of view. */
+    int probe(ChessGUI.Board b){
+        long key = b.pawnKey;
+        int i = (int)key & mask;
+        // ein leerer Eintrag (Schlüssel 0, Score 0) ist für die bauernlose Stellung (pawnKey 0) bereits richtig
+        if(keys[i] == key){ hits++; return scores[i]; }
+        misses++;
+        int s = ChessGUI.Eval.pawnStructure(b);
+        keys[i] = key; scores[i] = s;
+        return s;
+    }
+
+    void resetStats(){ hits = 0; misses = 0; }
+
+    double hitRate(){ long n = hits + misses; return n == 0 ? 0 : hits / (double)n; }
+}
@@ -0,0 +1,193 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Perft (move path enumeration) on top of {@link ChessGUI.Board}: counts the
+ * leaf nodes of the legal move tree to a fixed depth. Used as the regression
+ * gate and throughput benchmark for move generation.
+ *
+ * <pre>
+ * java -cp out Perft suite [--parallel] [--verify]
+ * java -cp out Perft perft &lt;depth&gt; [fen] [--parallel]
+ * java -cp out Perft divide &lt;depth&gt; [fen]
+ * </pre>
+ * {@code suite} exits with status 1 if any node count differs from the reference.
+ */
+public final class Perft {
+    private Perft() {}
+
+    static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    /** A reference position with its known node count at {@code depth}. */
+    static final class Case {
+        final String name, fen;
+        final int depth;
+        final long nodes;
+        Case(String name, String fen, int depth, long nodes){ this.name=name; this.fen=fen; this.depth=depth; this.nodes=nodes; }
+    }
+
+    // Standardstellungen (Chess Programming Wiki) und Randfälle für en passant, Rochade und Umwandlung
+    static final List<Case> SUITE = List.of(
+            new Case("Startstellung", START_FEN, 5, 4_865_609L),
+            new Case("Kiwipete", "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", 4, 4_085_603L),
+            new Case("Position 3", "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1", 5, 674_624L),
+            new Case("Position 4", "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1", 4, 422_333L),
+            new Case("Position 5", "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8", 4, 2_103_487L),
+            new Case("Position 6", "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10", 4, 3_894_594L),
+            new Case("Illegales e.p. 1", "3k4/3p4/8/K1P4r/8/8/8/8 b - - 0 1", 6, 1_134_888L),
+            new Case("Illegales e.p. 2", "8/8/4k3/8/2p5/8/B2P2K1/8 w - - 0 1", 6, 1_015_133L),
+            new Case("e.p. gibt Schach", "8/8/1k6/2b5/2pP4/8/5K2/8 b - d3 0 1", 6, 1_440_467L),
+            new Case("Kurze Rochade gibt Schach", "5k2/8/8/8/8/8/8/4K2R w K - 0 1", 6, 661_072L),
+            new Case("Lange Rochade gibt Schach", "3k4/8/8/8/8/8/8/R3K3 w Q - 0 1", 6, 803_711L),
+            new Case("Rochaderechte", "r3k2r/1b4bq/8/8/8/8/7B/R3K2R w KQkq - 0 1", 4, 1_274_206L),
+            new Case("Rochade verhindert", "r3k2r/8/3Q4/8/8/5q2/8/R3K2R b KQkq - 0 1", 4, 1_720_476L),
+            new Case("Umwandlung aus dem Schach", "2K2r2/4P3/8/8/8/8/8/3k4 w - - 0 1", 6, 3_821_001L),
+            new Case("Abzugsschach", "8/8/1P2K3/8/2n5/1q6/8/5k2 b - - 0 1", 5, 1_004_658L),
+            new Case("Umwandlung mit Schach", "4k3/1P6/8/8/8/8/K7/8 w - - 0 1", 6, 217_342L),
+            new Case("Unterverwandlung mit Schach", "8/P1k5/K7/8/8/8/8/8 w - - 0 1", 6, 92_683L),
+            new Case("Selbst-Patt", "K1k5/8/P7/8/8/8/8/8 w - - 0 1", 6, 2_217L),
+            new Case("Patt und Matt 1", "8/k1P5/8/1K6/8/8/8/8 w - - 0 1", 7, 567_584L),
+            new Case("Patt und Matt 2", "8/8/2k5/5q2/5n2/8/5K2/8 b - - 0 1", 4, 23_527L)
+    );
+
+    /** Counts leaf nodes; {@code b} is modified via make/unmake and restored. */
+    static long perft(ChessGUI.Board b, int depth){
+        if(depth==0) return 1;
+        return perft(b, depth, new int[depth][Moves.MAX_MOVES]);
+    }
+
+    // ein gepackter Zugpuffer je Resttiefe, keine Allokation im Baum
+    private static long perft(ChessGUI.Board b, int depth, int[][] buf){
+        int[] moves=buf[depth-1];
+        int count=b.legalMoves(moves);
+        if(depth==1) return count; // Bulk-Counting
+        long n=0;
+        for(int i=0;i<count;i++){
+            ChessGUI.UndoInfo u=b.make(moves[i]);
+            n+=perft(b, depth-1, buf);
+            b.unmake(u);
+        }
+        return n;
+    }
+
+    /**
+     * Like {@link #perft} but cross-checks the move generator against {@code legalMovesByFilter()}
+     * and the incremental Zobrist key and material/PST sum against a full recompute at every node.
+     */
+    static long perftVerified(ChessGUI.Board b, int depth){
+        List<ChessGUI.Move> moves = b.legalMoves();
+        int ref = b.legalMovesByFilter().size();
+        if(moves.size()!=ref) throw new IllegalStateException("Zuggenerator weicht ab ("+moves.size()+" statt "+ref+"): "+b.toFEN());
+        if(!b.keyConsistent()) throw new IllegalStateException("Zobrist-Schlüssel weicht ab: "+b.toFEN());
+        if(b.psqt!=ChessGUI.Eval.computePsqt(b)) throw new IllegalStateException("psqt weicht ab: "+b.toFEN());
+        if(depth<=1) return depth==0 ? 1 : moves.size();
+        long n=0;
+        for(ChessGUI.Move m: moves){
+            ChessGUI.UndoInfo u=b.make(m);
+            n+=perftVerified(b, depth-1);
+            b.unmake(u);
+        }
+        return n;
+    }
+
+    /** Node count per root move, in generation order. */
+    static List<String> divide(ChessGUI.Board b, int depth){
+        List<String> out=new ArrayList<>();
+        long total=0;
+        for(ChessGUI.Move m: b.legalMoves()){
+            ChessGUI.UndoInfo u=b.make(m);
+            long n=perft(b, depth-1);
+            b.unmake(u);
+            total+=n;
+            out.add(m+": "+n);
+        }
+        out.add("Gesamt: "+total);
+        return out;
+    }
+
+    /** Splits the root moves across the common fork-join pool; each task works on its own board copy. */
+    static long perftParallel(ChessGUI.Board b, int depth){
+        if(depth<=1) return perft(b.copy(), depth);
+        return ForkJoinPool.commonPool().invoke(new RootTask(b, depth));
+    }
+
+    private static final class RootTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+        private final ChessGUI.Board board;
+        private final int depth;
+        RootTask(ChessGUI.Board board, int depth){ this.board=board; this.depth=depth; }
+
+        @Override protected Long compute(){
+            List<RecursiveTask<Long>> tasks=new ArrayList<>();
+            for(ChessGUI.Move m: board.legalMoves()){
+                ChessGUI.Board child=board.makeMove(m);
+                RecursiveTask<Long> t=new RecursiveTask<>(){
+                    @Override protected Long compute(){ return perft(child, depth-1); }
+                };
+                t.fork();
+                tasks.add(t);
+            }
+            long n=0;
+            for(RecursiveTask<Long> t: tasks) n+=t.join();
+            return n;
+        }
+    }
+
+    public static void main(String[] args){
+        List<String> rest=new ArrayList<>();
+        boolean parallel=false, verify=false;
+        for(String a: args){
+            if(a.equals("--parallel")) parallel=true;
+            else if(a.equals("--verify")) verify=true;
+            else rest.add(a);
+        }
+        String cmd = rest.isEmpty() ? "suite" : rest.get(0);
+        switch(cmd){
+            case "suite" -> System.exit(runSuite(parallel, verify) ? 0 : 1);
+            case "perft" -> {
+                int depth=Integer.parseInt(rest.get(1));
+                ChessGUI.Board b=ChessGUI.Board.fromFEN(fenArg(rest, 2));
+                long t0=System.nanoTime();
+                long n = parallel ? perftParallel(b, depth) : perft(b, depth);
+                report("perft("+depth+")", n, System.nanoTime()-t0);
+            }
+            case "divide" -> {
+                int depth=Integer.parseInt(rest.get(1));
+                for(String line: divide(ChessGUI.Board.fromFEN(fenArg(rest, 2)), depth)) System.out.println(line);
+            }
+            default -> System.err.println("Aufruf: Perft suite|perft <tiefe> [fen]|divide <tiefe> [fen] [--parallel] [--verify]");
+        }
+    }
+
+    // FEN steht ggf. auf mehrere Argumente verteilt
+    private static String fenArg(List<String> args, int from){
+        return args.size()>from ? String.join(" ", args.subList(from, args.size())) : START_FEN;
+    }
+
+    static boolean runSuite(boolean parallel, boolean verify){
+        int failures=0;
+        long totalNodes=0, totalNs=0;
+        for(Case c: SUITE){
+            ChessGUI.Board b=ChessGUI.Board.fromFEN(c.fen);
+            long t0=System.nanoTime();
+            long n = verify ? perftVerified(b, c.depth) : parallel ? perftParallel(b, c.depth) : perft(b, c.depth);
+            long ns=System.nanoTime()-t0;
+            totalNodes+=n; totalNs+=ns;
+            boolean ok = n==c.nodes;
+            if(!ok) failures++;
+            System.out.printf(Locale.ROOT, "%-4s %-28s d=%d %,12d %s%n", ok?"OK":"FAIL", c.name, c.depth, n,
+                    ok ? "" : "(erwartet "+String.format(Locale.ROOT, "%,d", c.nodes)+")");
+        }
+        report("Suite ("+SUITE.size()+" Stellungen, "+(parallel?"parallel":"seriell")+")", totalNodes, totalNs);
+        if(failures>0) System.out.println(failures+" Abweichung(en)!");
+        return failures==0;
+    }
+
+    private static void report(String label, long nodes, long ns){
+        double sec=ns/1e9;
+        System.out.printf(Locale.ROOT, "%s: %,d Knoten in %.2f s, %,.0f Knoten/s%n", label, nodes, sec, nodes/Math.max(sec, 1e-9));
+    }
+}
@@ -0,0 +1,55 @@
+import java.util.List;
+
+/**
+ * Move sequences from the start position with the expected result of
+ * {@link ChessGUI.Board#isThreefoldRepetition} after the last move. Along the
+ * way every incremental key is compared with a key rebuilt from the FEN.
+ *
+ * <pre>
+ * java -cp out RepetitionSuite
+ * </pre>
+ * Exits with status 1 if any result differs.
+ */
+public final class RepetitionSuite {
+    private RepetitionSuite() {}
+
+    /** Moves in UCI notation and whether the final position is a threefold repetition. */
+    static final class Case {
+        final String name, moves;
+        final boolean expected;
+        Case(String name, String moves, boolean expected){ this.name=name; this.moves=moves; this.expected=expected; }
+    }
+
+    static final List<Case> SUITE = List.of(
+            new Case("Springer hin und her", "g1f3 g8f6 f3g1 f6g8 g1f3 g8f6 f3g1 f6g8", true),
+            new Case("Erst zweimal", "g1f3 g8f6 f3g1 f6g8 g1f3 g8f6 f3g1", false),
+            // e.p. auf e3 ist nicht schlagbar, die Stellung nach 1.e4 zählt mit
+            new Case("Nach Doppelschritt", "e2e4 g8f6 g1f3 f6g8 f3g1 g8f6 g1f3 f6g8 f3g1", true),
+            // nach 2...d5 darf e5xd6 schlagen: diese Stellung ist eine andere
+            new Case("Schlagbares e.p. zählt nicht", "e2e4 g8f6 e4e5 f6g8 d2d4 d7d5 g1f3 b8c6 f3g1 c6b8 g1f3 b8c6 f3g1 c6b8", false),
+            new Case("Schlagbares e.p., dritte Runde", "e2e4 g8f6 e4e5 f6g8 d2d4 d7d5 g1f3 b8c6 f3g1 c6b8 g1f3 b8c6 f3g1 c6b8 g1f3 b8c6 f3g1 c6b8", true)
+    );
+
+    public static void main(String[] args){
+        int failures=0;
+        for(Case c: SUITE){
+            ChessGUI.Board b=ChessGUI.Board.initial();
+            String keyError=null;
+            for(String uci: c.moves.split(" ")){
+                ChessGUI.Move m=null;
+                for(ChessGUI.Move x: b.legalMoves()) if(x.toString().equals(uci)) m=x;
+                if(m==null) throw new IllegalStateException("Zug "+uci+" nicht legal in "+c.name);
+                b=b.makeMove(m);
+                if(keyError==null && b.key!=ChessGUI.Board.fromFEN(b.toFEN()).key) keyError=uci;
+            }
+            boolean got=b.isThreefoldRepetition();
+            boolean ok = got==c.expected && keyError==null;
+            if(!ok) failures++;
+            System.out.printf("%-4s %-32s %s%s%s%n", ok?"OK":"FAIL", c.name, got ? "Wiederholung" : "keine",
+                    got==c.expected ? "" : " (erwartet "+(c.expected ? "Wiederholung" : "keine")+")",
+                    keyError==null ? "" : " (Schlüssel weicht nach "+keyError+" ab)");
+        }
+        if(failures>0) System.out.println(failures+" Abweichung(en)!");
+        System.exit(failures==0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,53 @@
+import java.util.List;
+
+/**
+ * Hand-checked exchange positions for {@link ChessGUI.Board#see}. Values use
+ * the SEE piece values (P 100, N 320, B 330, R 500, Q 900).
+ *
+ * <pre>
+ * java -cp out SeeSuite
+ * </pre>
+ * Exits with status 1 if any result differs.
+ */
+public final class SeeSuite {
+    private SeeSuite() {}
+
+    /** A position, a capture in UCI notation and its expected exchange balance. */
+    static final class Case {
+        final String name, fen, move;
+        final int expected;
+        Case(String name, String fen, String move, int expected){ this.name=name; this.fen=fen; this.move=move; this.expected=expected; }
+    }
+
+    static final List<Case> SUITE = List.of(
+            new Case("Ungedeckter Bauer", "4k3/8/8/4p3/8/8/8/4R1K1 w - - 0 1", "e1e5", 100),
+            new Case("Turm gegen gedeckten Bauern", "4k3/8/3p4/4p3/8/8/8/4R1K1 w - - 0 1", "e1e5", -400),
+            new Case("Verdoppelte Türme", "4k3/8/3p4/4p3/8/8/4R3/4R1K1 w - - 0 1", "e2e5", -300),
+            new Case("Dame gegen gedeckten Bauern", "4k3/8/3p4/4p3/8/8/8/4QK2 w - - 0 1", "e1e5", -800),
+            new Case("Springertausch", "4k3/8/3p4/4n3/8/5N2/8/4K3 w - - 0 1", "f3e5", 0),
+            new Case("Röntgen Läufer + Dame", "4k3/8/2b5/8/4p3/8/2B5/1Q2K3 w - - 0 1", "c2e4", 100),
+            new Case("König schlägt zurück", "8/8/8/8/3kp3/8/8/4R1K1 w - - 0 1", "e1e4", -400),
+            new Case("König darf nicht zurückschlagen", "8/8/8/8/3kp3/8/6B1/4R1K1 w - - 0 1", "e1e4", 100),
+            new Case("En passant", "4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1", "e5d6", 100),
+            new Case("Schlagen mit Umwandlung", "3r3k/4P3/8/8/8/8/8/4K3 w - - 0 1", "e7d8q", 1300),
+            new Case("Ruhiger Zug auf bewachtes Feld", "4k3/8/3p4/8/8/8/8/4RK2 w - - 0 1", "e1e5", -500),
+            new Case("Bauer schlägt Turm", "4k3/8/8/3r4/4P3/8/8/4K3 w - - 0 1", "e4d5", 500),
+            new Case("Röntgen hinter dem Gegner", "3rk3/8/8/3p4/8/8/3R4/3RK3 w - - 0 1", "d2d5", 100)
+    );
+
+    public static void main(String[] args){
+        int failures=0;
+        for(Case c: SUITE){
+            ChessGUI.Board b=ChessGUI.Board.fromFEN(c.fen);
+            ChessGUI.Move m=null;
+            for(ChessGUI.Move x: b.legalMoves()) if(x.toString().equals(c.move)) m=x;
+            if(m==null) throw new IllegalStateException("Zug "+c.move+" nicht legal: "+c.fen);
+            int v=b.see(m);
+            boolean ok = v==c.expected;
+            if(!ok) failures++;
+            System.out.printf("%-4s %-34s %-6s %6d%s%n", ok?"OK":"FAIL", c.name, c.move, v, ok ? "" : " (erwartet "+c.expected+")");
+        }
+        if(failures>0) System.out.println(failures+" Abweichung(en)!");
+        System.exit(failures==0 ? 0 : 1);
+    }
+}
@@ -28,9 +28,15 @@ public class StockfishEngine {
         return path;
     }
 
-    /** Starts the Stockfish process and performs a basic UCI handshake. */
+    /**
+     * Starts the Stockfish process and performs a basic UCI handshake. Does
+     * nothing while the process is alive; a crashed process is started anew.
+     */
     public void start() throws IOException {
-        if (process != null) return;
+        if (process != null) {
+            if (process.isAlive()) return;
+            process = null;
+        }
         ProcessBuilder pb = new ProcessBuilder(path);
         pb.redirectErrorStream(true);
         process = pb.start();
@@ -38,6 +44,15 @@ public class StockfishEngine {
         reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
         sendCommand("uci");
         readUntil("uciok");
+        waitReady();
+    }
+
+    public boolean isRunning() {
+        return process != null && process.isAlive();
+    }
+
+    /** Sends {@code isready} and skips all output up to {@code readyok}. */
+    public void waitReady() throws IOException {
         sendCommand("isready");
         readUntil("readyok");
     }
@@ -51,6 +66,15 @@ public class StockfishEngine {
         }
     }
 
+    /**
+     * Destroys the process without writing to it; safe while another thread
+     * is still reading from the engine.
+     */
+    public void kill() {
+        Process p = process;
+        if (p != null) p.destroyForcibly();
+    }
+
     /** Sends an arbitrary command to the engine. */
     public void sendCommand(String cmd) throws IOException {
         if (writer == null) throw new IllegalStateException("Engine not started");
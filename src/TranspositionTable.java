@@ -0,0 +1,96 @@
+/**
+ * Fixed-size transposition table for {@link ChessGUI.AI}. Entries live in a
+ * single {@code long[]} (no per-entry objects): two longs per entry (key, data)
+ * and two entries per bucket. Slot 0 of a bucket keeps the deepest result,
+ * slot 1 is always replaced.
+ *
+ * <p>The table is shared lock-free between the Lazy SMP search threads. The
+ * key slot holds {@code key ^ data}, so an entry torn by two concurrent
+ * writers no longer verifies against its key and is treated as a miss.
+ *
+ * <p>Data layout: bits 0-31 score, 32-47 move ({@link #encodeMove}),
+ * 48-55 depth, 56-57 bound, 58-63 search generation.
+ */
+final class TranspositionTable {
+    static final int BOUND_NONE = 0, BOUND_UPPER = 1, BOUND_LOWER = 2, BOUND_EXACT = 3;
+
+    // Schwelle, ab der ein Score als Mattwert gilt (MATE - Distanz in Halbzügen)
+    private static final int MATE_BOUND = ChessGUI.AI.MATE - 1000;
+
+    private final long[] table;
+    private final int bucketMask;
+    private int generation;
+
+    /** @param sizeMb table size in MB, rounded down to a power of two number of buckets */
+    TranspositionTable(int sizeMb){
+        long buckets = Math.max(1, (long)sizeMb * 1024 * 1024 / 32);
+        int n = Integer.highestOneBit((int)Math.min(buckets, 1 << 26));
+        table = new long[n * 4];
+        bucketMask = n - 1;
+    }
+
+    /** Marks the start of a new search so entries from older searches are replaced first. */
+    void newSearch(){ generation = (generation + 1) & 63; }
+
+    void clear(){ java.util.Arrays.fill(table, 0L); }
+
+    int sizeMb(){ return (int)((long)table.length * 8 / (1024 * 1024)); }
+
+    /** Returns the data word for {@code key}, or 0 if not present. */
+    long probe(long key){
+        int i = ((int)key & bucketMask) << 2;
+        // erst Daten lesen, dann gegen den Schlüssel prüfen (Daten könnten parallel überschrieben werden)
+        long d0 = table[i+1];
+        if(d0 != 0 && (table[i] ^ d0) == key) return d0;
+        long d1 = table[i+3];
+        if(d1 != 0 && (table[i+2] ^ d1) == key) return d1;
+        return 0;
+    }
+
+    void store(long key, int depth, int bound, int score, int ply, int move){
+        int i = ((int)key & bucketMask) << 2;
+        long data = pack(toTT(score, ply), move, depth, bound);
+        long old = table[i+1];
+        boolean same = old != 0 && (table[i] ^ old) == key;
+        // Tiefen-Slot: gleiche Stellung, nicht flacher als vorhanden, oder Eintrag aus älterer Suche
+        if(same || old == 0 || depth >= depth(old) || generation(old) != generation){
+            if(same && move == 0) data = pack(toTT(score, ply), move(old), depth, bound);
+            table[i] = key ^ data; table[i+1] = data;
+        } else {
+            table[i+2] = key ^ data; table[i+3] = data;
+        }
+    }
+
+    private long pack(int score, int move, int depth, int bound){
+        return (score & 0xFFFFFFFFL) | ((long)(move & 0xFFFF) << 32) | ((long)(depth & 0xFF) << 48)
+                | ((long)bound << 56) | ((long)generation << 58);
+    }
+
+    static int score(long data, int ply){ return fromTT((int)data, ply); }
+    static int move(long data){ return (int)(data >>> 32) & 0xFFFF; }
+    static int depth(long data){ return (int)(data >>> 48) & 0xFF; }
+    static int bound(long data){ return (int)(data >>> 56) & 3; }
+    private static int generation(long data){ return (int)(data >>> 58) & 63; }
+
+    // Mattwerte werden relativ zur gespeicherten Stellung abgelegt, nicht zur Wurzel
+    private static int toTT(int score, int ply){
+        if(score >= MATE_BOUND) return score + ply;
+        if(score <= -MATE_BOUND) return score - ply;
+        return score;
+    }
+
+    private static int fromTT(int score, int ply){
+        if(score >= MATE_BOUND) return score - ply;
+        if(score <= -MATE_BOUND) return score + ply;
+        return score;
+    }
+
+    /** 16-bit move code: from (6 bits), to (6 bits), promotion (3 bits); 0 means no move. Equals {@link Moves#code}. */
+    static int encodeMove(ChessGUI.Move m){
+        if(m == null) return 0;
+        int promo = m.promotion == null ? 0 : m.promotion.ordinal() + 1;
+        return m.from | (m.to << 6) | (promo << 12);
+    }
+
+    static boolean matches(ChessGUI.Move m, int code){ return code != 0 && encodeMove(m) == code; }
+}
@@ -0,0 +1,25 @@
+import java.util.SplittableRandom;
+
+/**
+ * Random keys for the 64-bit Zobrist hash kept in {@link ChessGUI.Board#key}.
+ * The seed is fixed so keys are stable between runs.
+ */
+final class Zobrist {
+    private Zobrist() {}
+
+    // PIECE[Bitboards-Index][Feld]
+    static final long[][] PIECE = new long[12][64];
+    static final long SIDE;              // Schwarz am Zug
+    static final long[] CASTLE = new long[16]; // Index: Bits KQkq, siehe Board.castleMask()
+    static final long[] EP_FILE = new long[8];
+
+    static {
+        SplittableRandom rnd = new SplittableRandom(0x5EEDC0FFEEL);
+        for(long[] row: PIECE) for(int i=0;i<64;i++) row[i] = rnd.nextLong();
+        SIDE = rnd.nextLong();
+        long[] rights = {rnd.nextLong(), rnd.nextLong(), rnd.nextLong(), rnd.nextLong()};
+        // Kombinationen per XOR der Einzelrechte, damit CASTLE[a]^CASTLE[b] nur die geänderten Rechte enthält
+        for(int m=0;m<16;m++) for(int bit=0;bit<4;bit++) if((m & (1 << bit)) != 0) CASTLE[m] ^= rights[bit];
+        for(int f=0;f<8;f++) EP_FILE[f] = rnd.nextLong();
+    }
+}